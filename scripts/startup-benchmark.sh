@@ -0,0 +1,66 @@
+#!/bin/sh
+# Startup benchmark for PT-Log: measures time from JVM launch until /healthcheck answers,
+# once with a plain "java -jar" and once with the fast-startup options (AOT + CDS archive).
+#
+# Build first with:  ./mvnw clean package -DskipTests -Paot
+# Usage:             scripts/startup-benchmark.sh [runs] [port]
+
+RUNS=${1:-5}
+PORT=${2:-18080}
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+JAR=$(ls target/PtLog-*.jar 2>/dev/null | grep -v original | head -1)
+if [ -z "$JAR" ]; then
+    echo "No jar in target/, build with: ./mvnw clean package -DskipTests -Paot"
+    exit 1
+fi
+
+# Extract the jar, CDS works on plain jars on the classpath
+java -Djarmode=tools -jar "$JAR" extract --destination "$WORK/app" > /dev/null
+APP="$WORK/app/$(basename "$JAR")"
+
+echo "Creating CDS archive (training run)..."
+java -XX:ArchiveClassesAtExit="$WORK/ptlog.jsa" -Dspring.aot.enabled=true -Dspring.context.exit=onRefresh \
+     -Ddb.type=h2 -Dh2.file.path="$WORK/training/ptlog" -jar "$APP" > "$WORK/training.log" 2>&1
+
+now_ms() {
+    date +%s%3N
+}
+
+# Starts the app with the given options and prints milliseconds until /healthcheck returns 200
+measure() {
+    rm -rf "$WORK/db"
+    start=$(now_ms)
+    java "$@" -Ddb.type=h2 -Dh2.file.path="$WORK/db/ptlog" -Dserver.port="$PORT" -jar "$APP" > "$WORK/run.log" 2>&1 &
+    pid=$!
+    until curl -sf "http://localhost:$PORT/healthcheck" > /dev/null 2>&1; do
+        if ! kill -0 $pid 2>/dev/null; then
+            echo "failed to start, see log:" >&2
+            tail -20 "$WORK/run.log" >&2
+            exit 1
+        fi
+        sleep 0.05
+    done
+    end=$(now_ms)
+    kill $pid
+    wait $pid 2>/dev/null
+    echo $((end - start))
+}
+
+run_mode() {
+    name=$1
+    shift
+    total=0
+    for i in $(seq 1 "$RUNS"); do
+        ms=$(measure "$@") || exit 1
+        total=$((total + ms))
+        echo "  $name run $i: ${ms} ms"
+    done
+    echo "$name average: $((total / RUNS)) ms"
+}
+
+echo "Baseline (plain java -jar, eager API docs):"
+run_mode baseline -Dstartup.lazy-api-docs=false
+echo "Fast startup (AOT + CDS + lazy API docs):"
+run_mode fast -XX:SharedArchiveFile="$WORK/ptlog.jsa" -Dspring.aot.enabled=true
@@ -0,0 +1,270 @@
+package se.ptlog.loadtest;
+
+import org.h2.tools.Server;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import se.ptlog.PtLog;
+import se.ptlog.compression.AnalysCompression;
+import se.ptlog.config.DatabaseConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the /getData query with driver defaults and with the tuning applied by DatabaseConfig.
+ * Every call runs the way PtLog.OraSQL does (prepare, execute, read all rows and CLOBs, close), through a TCP proxy
+ * that counts network round trips (client request followed by server response), so the effect of the statement
+ * cache and row/LOB prefetch is visible as round trips per call next to the elapsed time.
+ *
+ * Without bench.url a local H2 TCP server is started. Against Oracle the PTLOG schema must exist, a BENCH_GETDATA
+ * project is created and removed again.
+ *
+ * Run with: ./mvnw -Ploadtest verify -Dloadtest.main=se.ptlog.loadtest.GetDataBenchmark
+ * Settings (system properties, defaults in brackets):
+ *   bench.url [local H2], bench.username, bench.password, bench.rows [500], bench.analys-bytes [2000],
+ *   bench.iterations [200], bench.statement-cache-size [100], bench.row-prefetch [100],
+ *   bench.lob-prefetch-size [32768], bench.h2-query-cache-size [64], bench.h2-inplace-lob-length [4096]
+ */
+public class GetDataBenchmark {
+
+    private static final String PROJEKT = "BENCH_GETDATA";
+    // Host and port of a thin or H2 TCP URL: jdbc:oracle:thin:@//host:1521/svc, @host:1521:sid, jdbc:h2:tcp://host:9092/...
+    private static final Pattern HOST_PORT = Pattern.compile("(@//|@|//)([^:/@()]+):(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("bench.url", "");
+        String username = System.getProperty("bench.username", "sa");
+        String password = System.getProperty("bench.password", "");
+        int rows = Integer.getInteger("bench.rows", 500);
+        int analysBytes = Integer.getInteger("bench.analys-bytes", 2000);
+        int iterations = Integer.getInteger("bench.iterations", 200);
+        Properties oracleTuning = DatabaseConfig.oracleDriverProperties(
+                Integer.getInteger("bench.statement-cache-size", 100),
+                Integer.getInteger("bench.row-prefetch", 100),
+                Integer.getInteger("bench.lob-prefetch-size", 32768));
+        String h2Tuning = DatabaseConfig.h2UrlSettings(Integer.getInteger("bench.h2-query-cache-size", 64),
+                Integer.getInteger("bench.h2-inplace-lob-length", 4096));
+
+        Path h2Dir = null;
+        Server h2Server = null;
+        String defaultUrl;
+        String tunedUrl;
+        boolean oracle = url.startsWith("jdbc:oracle:");
+        if (url.isBlank()) {
+            // Separate databases per run: H2 only applies URL settings when the database is opened
+            h2Dir = Files.createTempDirectory("ptlog-bench");
+            h2Server = Server.createTcpServer("-tcpPort", "0", "-baseDir", h2Dir.toString(), "-ifNotExists").start();
+            defaultUrl = "jdbc:h2:tcp://localhost:" + h2Server.getPort() + "/defaults;MODE=Oracle";
+            tunedUrl = "jdbc:h2:tcp://localhost:" + h2Server.getPort() + "/tuned;MODE=Oracle" + h2Tuning;
+        } else {
+            defaultUrl = url;
+            tunedUrl = url;
+        }
+
+        try {
+            System.out.printf("%n/getData benchmark: %d rows of %d byte ANALYS, %d calls per run, %s%n",
+                    rows, analysBytes, iterations, oracle ? "Oracle" : url.isBlank() ? "H2 (TCP server)" : url);
+            System.out.printf("%n%-16s %12s %14s %12s%n", "run", "ms/call", "round trips", "rows/call");
+            Result defaults = run("driver defaults", defaultUrl, username, password, new Properties(),
+                    !oracle, rows, analysBytes, iterations);
+            Result tuned = run("tuned", tunedUrl, username, password, oracle ? oracleTuning : new Properties(),
+                    !oracle, rows, analysBytes, iterations);
+            System.out.printf("%nRound trips per call %.1f -> %.1f, time per call %.2f ms -> %.2f ms%n",
+                    defaults.roundTripsPerCall, tuned.roundTripsPerCall, defaults.msPerCall, tuned.msPerCall);
+        } finally {
+            if (h2Server != null) {
+                h2Server.stop();
+            }
+            if (h2Dir != null) {
+                try (var paths = Files.walk(h2Dir)) {
+                    paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+        }
+    }
+
+    private record Result(double msPerCall, double roundTripsPerCall) {
+    }
+
+    private static Result run(String name, String url, String username, String password, Properties tuning,
+                              boolean createSchema, int rows, int analysBytes, int iterations) throws Exception {
+        Matcher hostPort = HOST_PORT.matcher(url);
+        if (!hostPort.find()) {
+            throw new IllegalArgumentException("No host:port found in " + url);
+        }
+        Properties properties = new Properties();
+        properties.putAll(tuning);
+        properties.setProperty("user", username);
+        properties.setProperty("password", password);
+
+        try (RoundTripProxy proxy = new RoundTripProxy(hostPort.group(2), Integer.parseInt(hostPort.group(3)))) {
+            String proxiedUrl = url.substring(0, hostPort.start(2)) + "localhost:" + proxy.port() + url.substring(hostPort.end(3));
+            try (Connection conn = DriverManager.getConnection(proxiedUrl, properties)) {
+                seed(conn, createSchema, rows, analysBytes);
+                try {
+                    int rowsPerCall = 0;
+                    for (int i = 0; i < 20; i++) {
+                        rowsPerCall = getData(conn);
+                    }
+                    proxy.reset();
+                    long started = System.nanoTime();
+                    for (int i = 0; i < iterations; i++) {
+                        getData(conn);
+                    }
+                    double msPerCall = (System.nanoTime() - started) / 1e6 / iterations;
+                    double roundTripsPerCall = (double) proxy.roundTrips() / iterations;
+                    System.out.printf("%-16s %12.2f %14.1f %12d%n", name, msPerCall, roundTripsPerCall, rowsPerCall);
+                    return new Result(msPerCall, roundTripsPerCall);
+                } finally {
+                    cleanup(conn);
+                }
+            }
+        }
+    }
+
+    // Same statement, binds and row handling as PtLog.OraSQL
+    private static int getData(Connection conn) throws SQLException {
+        int count = 0;
+        try (PreparedStatement st = conn.prepareStatement(PtLog.GET_DATA_SQL)) {
+            st.setString(1, PROJEKT);
+            st.setString(2, PROJEKT);
+            try (ResultSet rs = st.executeQuery()) {
+                ResultSetMetaData rsmd = rs.getMetaData();
+                int colCount = rsmd.getColumnCount();
+                while (rs.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= colCount; i++) {
+                        AnalysCompression.putColumn(row, rs, i, rsmd.getColumnName(i));
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void seed(Connection conn, boolean createSchema, int rows, int analysBytes) throws SQLException {
+        if (createSchema) {
+            ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                    new ClassPathResource("schema-h2.sql"), new ClassPathResource("schema-h2-arkiv.sql"));
+            populator.execute(new SingleConnectionDataSource(conn, true));
+        }
+        cleanup(conn);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO PTLOG_PROJEKT (NAMN, BESKRIVNING) VALUES (?, 'getData benchmark')")) {
+            ps.setString(1, PROJEKT);
+            ps.executeUpdate();
+        }
+        String analys = "x".repeat(analysBytes);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO PTLOG (DATUM, TYP, TESTNAMN, SYFTE, ANALYS, PROJEKT, TESTARE) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= rows; i++) {
+                ps.setTimestamp(1, new Timestamp(System.currentTimeMillis() - i * 60_000L));
+                ps.setString(2, "Referenstest");
+                ps.setString(3, String.format("%02d_REF_Bench", i));
+                ps.setString(4, "Benchmark row");
+                ps.setString(5, analys);
+                ps.setString(6, PROJEKT);
+                ps.setString(7, "bench");
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        if (!conn.getAutoCommit()) {
+            conn.commit();
+        }
+    }
+
+    private static void cleanup(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("DELETE FROM PTLOG WHERE PROJEKT = '" + PROJEKT + "'");
+            st.executeUpdate("DELETE FROM PTLOG_ARKIV WHERE PROJEKT = '" + PROJEKT + "'");
+            st.executeUpdate("DELETE FROM PTLOG_PROJEKT WHERE NAMN = '" + PROJEKT + "'");
+        }
+    }
+
+    /**
+     * Forwards one TCP connection at a time to the database and counts round trips: every time the client
+     * sends after the server has answered (or for the first time) a new round trip starts.
+     */
+    private static class RoundTripProxy implements AutoCloseable {
+        private final ServerSocket listener;
+        private final AtomicLong roundTrips = new AtomicLong();
+        // 0 = nothing sent yet, 1 = client spoke last, 2 = server spoke last
+        private final AtomicInteger lastSpeaker = new AtomicInteger();
+
+        RoundTripProxy(String host, int port) throws IOException {
+            listener = new ServerSocket();
+            listener.bind(new InetSocketAddress("localhost", 0));
+            Thread.ofVirtual().start(() -> {
+                while (!listener.isClosed()) {
+                    try {
+                        Socket client = listener.accept();
+                        Socket server = new Socket(host, port);
+                        client.setTcpNoDelay(true);
+                        server.setTcpNoDelay(true);
+                        Thread.ofVirtual().start(() -> pump(client, server, 1));
+                        Thread.ofVirtual().start(() -> pump(server, client, 2));
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        int port() {
+            return listener.getLocalPort();
+        }
+
+        long roundTrips() {
+            return roundTrips.get();
+        }
+
+        void reset() {
+            roundTrips.set(0);
+        }
+
+        private void pump(Socket from, Socket to, int speaker) {
+            byte[] buffer = new byte[65536];
+            try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    if (lastSpeaker.getAndSet(speaker) != speaker && speaker == 1) {
+                        roundTrips.incrementAndGet();
+                    }
+                    out.write(buffer, 0, read);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Connection closed by either side
+            } finally {
+                try {
+                    from.close();
+                    to.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            listener.close();
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package se.ptlog.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.ptlog.PtLog;
+import se.ptlog.config.PoolSizingAdvisor;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End-to-end load and soak test for the PT-Log REST API.
+ * Starts the application on an ephemeral port against a temporary H2 file database, drives a weighted mix of
+ * /insert, /getData, /populate, /updateAnalys and /deleteTest from virtual-thread clients, then reports
+ * throughput, latency percentiles, error rates and Hikari wait times and checks data invariants.
+ *
+ * Run with: ./mvnw -Ploadtest verify -Dloadtest.clients=100 -Dloadtest.duration-seconds=60
+ * Settings (system properties, defaults in brackets):
+ *   loadtest.clients [50], loadtest.duration-seconds [30], loadtest.warmup-seconds [5],
+ *   loadtest.projects [5], loadtest.report-interval-seconds [10],
+ *   loadtest.mix [insert=20,getData=40,populate=20,updateAnalys=15,deleteTest=5],
+ *   loadtest.app-args [extra application arguments, space separated, e.g. --readmodel.enabled=true],
+ *   loadtest.fail-on-violation [true]
+ */
+public class LoadHarness {
+
+    enum Op { insert, getData, populate, updateAnalys, deleteTest }
+
+    private static final String[] TEST_TYPES = {"Referenstest", "Belastningstest", "Utmattningstest", "Maxtest"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final Map<Op, LatencyHistogram> latencies = new EnumMap<>(Op.class);
+    private final Map<Op, LongAdder> errors = new EnumMap<>(Op.class);
+    private final Map<Op, LongAdder> notFound = new EnumMap<>(Op.class);
+    // Test names returned by /insert, per project, used as targets for updates and deletes
+    private final Map<String, Deque<String>> knownTests = new ConcurrentHashMap<>();
+    // Rows each project should hold: successful inserts minus rows reported deleted, warmup included
+    private final Map<String, AtomicInteger> expectedRows = new ConcurrentHashMap<>();
+    // How often /insert returned each counter, per project, to report counters handed out again after a delete
+    private final Map<String, Map<String, Integer>> issuedCounters = new ConcurrentHashMap<>();
+    private final AtomicBoolean recording = new AtomicBoolean();
+    private final AtomicInteger maxThreadsAwaiting = new AtomicInteger();
+
+    private final String baseUrl;
+    private final List<String> projects = new ArrayList<>();
+
+    LoadHarness(int port, int projectCount) {
+        this.baseUrl = "http://localhost:" + port;
+        for (int i = 1; i <= projectCount; i++) {
+            projects.add("LOADTEST_" + i);
+        }
+        for (Op op : Op.values()) {
+            latencies.put(op, new LatencyHistogram());
+            errors.put(op, new LongAdder());
+            notFound.put(op, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = Integer.getInteger("loadtest.clients", 50);
+        int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 30);
+        int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 5);
+        int projectCount = Integer.getInteger("loadtest.projects", 5);
+        int reportInterval = Integer.getInteger("loadtest.report-interval-seconds", 10);
+        Map<Op, Integer> mix = parseMix(System.getProperty("loadtest.mix",
+                "insert=20,getData=40,populate=20,updateAnalys=15,deleteTest=5"));
+        boolean failOnViolation = Boolean.parseBoolean(System.getProperty("loadtest.fail-on-violation", "true"));
+
+        Path dataDir = Files.createTempDirectory("ptlog-loadtest");
+        List<String> appArgs = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--db.type=h2",
+                "--h2.file.path=" + dataDir.resolve("ptlog").toAbsolutePath(),
+                "--h2.auto.init=true",
+                "--spring.h2.console.enabled=false",
+                // The harness drains the pool advisor itself, once before and once after the run
+                "--db.pool.advisor.interval-ms=86400000",
+                "--logging.level.se.ptlog=WARN",
+                "--spring.main.banner-mode=off"));
+        String extraArgs = System.getProperty("loadtest.app-args", "").trim();
+        if (!extraArgs.isEmpty()) {
+            appArgs.addAll(Arrays.asList(extraArgs.split("\\s+")));
+        }
+
+        ConfigurableApplicationContext context = SpringApplication.run(PtLog.class, appArgs.toArray(String[]::new));
+        List<String> violations;
+        try {
+            int port = Integer.parseInt(context.getEnvironment().getRequiredProperty("local.server.port"));
+            LoadHarness harness = new LoadHarness(port, projectCount);
+            System.out.printf("%nPT-Log load test: %d clients, %ds warmup, %ds measured, %d projects, mix %s, app args %s%n",
+                    clients, warmupSeconds, durationSeconds, projectCount, mix, extraArgs.isEmpty() ? "-" : extraArgs);
+
+            harness.createProjects();
+            harness.run(context, clients, warmupSeconds, durationSeconds, reportInterval, mix);
+            violations = harness.checkInvariants();
+        } finally {
+            context.close();
+            deleteRecursively(dataDir);
+        }
+
+        if (!violations.isEmpty()) {
+            System.out.println("\nInvariant violations:");
+            violations.forEach(v -> System.out.println("  " + v));
+            if (failOnViolation) {
+                throw new IllegalStateException(violations.size() + " invariant violation(s), see report above");
+            }
+        } else {
+            System.out.println("\nInvariants OK");
+        }
+    }
+
+    private void createProjects() throws IOException, InterruptedException {
+        for (String projekt : projects) {
+            HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/createProject"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            objectMapper.writeValueAsString(Map.of("Projekt", projekt, "Beskrivning", "Load test")))));
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Could not create project " + projekt + ": " + response.body());
+            }
+            knownTests.put(projekt, new ConcurrentLinkedDeque<>());
+            expectedRows.put(projekt, new AtomicInteger());
+            issuedCounters.put(projekt, new ConcurrentHashMap<>());
+        }
+    }
+
+    private void run(ConfigurableApplicationContext context, int clients, int warmupSeconds, int durationSeconds,
+                     int reportInterval, Map<Op, Integer> mix) throws Exception {
+        // The pools are wrapped by the SQL tracer
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (DataSource dataSource : context.getBeansOfType(DataSource.class).values()) {
+            HikariDataSource pool = dataSource.unwrap(HikariDataSource.class);
+            if (!pools.contains(pool)) {
+                pools.add(pool);
+            }
+        }
+        PoolSizingAdvisor advisor = context.getBean(PoolSizingAdvisor.class);
+
+        Op[] weighted = mix.entrySet().stream()
+                .flatMap(e -> Collections.nCopies(e.getValue(), e.getKey()).stream())
+                .toArray(Op[]::new);
+
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                executor.submit(() -> clientLoop(client, weighted, end));
+            }
+            executor.submit(() -> samplePools(pools, end));
+
+            sleepUntil(warmupEnd);
+            // Start of the measured window: reset pool statistics and begin recording
+            advisor.evaluate();
+            recording.set(true);
+            long start = System.nanoTime();
+
+            while (System.nanoTime() < end) {
+                sleepUntil(Math.min(end, System.nanoTime() + TimeUnit.SECONDS.toNanos(reportInterval)));
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                long done = latencies.values().stream().mapToLong(LatencyHistogram::count).sum();
+                System.out.printf("  %6.0fs  %8d requests  %8.1f req/s%n", elapsed, done, done / elapsed);
+            }
+            recording.set(false);
+            advisor.evaluate();
+            report((System.nanoTime() - start) / 1e9, advisor);
+        }
+    }
+
+    private void clientLoop(int client, Op[] weighted, long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            Op op = weighted[random.nextInt(weighted.length)];
+            String projekt = projects.get(random.nextInt(projects.size()));
+            long started = System.nanoTime();
+            try {
+                int status = execute(op, projekt, client, random);
+                long micros = (System.nanoTime() - started) / 1000;
+                if (recording.get()) {
+                    latencies.get(op).record(micros);
+                    if (status == 404) {
+                        notFound.get(op).increment();
+                    } else if (status >= 400) {
+                        errors.get(op).increment();
+                    }
+                }
+            } catch (Exception e) {
+                if (recording.get()) {
+                    latencies.get(op).record((System.nanoTime() - started) / 1000);
+                    errors.get(op).increment();
+                }
+            }
+        }
+    }
+
+    private int execute(Op op, String projekt, int client, ThreadLocalRandom random) throws Exception {
+        Deque<String> tests = knownTests.get(projekt);
+        switch (op) {
+            case insert -> {
+                Map<String, String> body = Map.of(
+                        "Datum", Instant.now().toString(),
+                        "Typ", TEST_TYPES[random.nextInt(TEST_TYPES.length)],
+                        "Testnamn", "Load",
+                        "Syfte", "Load test insert",
+                        "Projekt", projekt,
+                        "Testare", "client-" + client);
+                HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/insert"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body))));
+                int marker = response.body().indexOf("testnamn: ");
+                if (response.statusCode() == 200 && marker >= 0) {
+                    String testnamn = response.body().substring(marker + "testnamn: ".length()).trim();
+                    expectedRows.get(projekt).incrementAndGet();
+                    issuedCounters.get(projekt).merge(counter(testnamn), 1, Integer::sum);
+                    tests.addLast(testnamn);
+                }
+                return response.statusCode();
+            }
+            case getData -> {
+                return send(HttpRequest.newBuilder(uri("/getData?projekt=" + encode(projekt))).GET()).statusCode();
+            }
+            case populate -> {
+                return send(HttpRequest.newBuilder(uri("/populate")).GET()).statusCode();
+            }
+            case updateAnalys -> {
+                String testnamn = tests.peekLast();
+                if (testnamn == null) {
+                    return 404;
+                }
+                Map<String, String> body = Map.of("Projekt", projekt, "Testnamn", testnamn,
+                        "Analys", "Analys from client " + client + " at " + Instant.now());
+                return send(HttpRequest.newBuilder(uri("/updateAnalys"))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))).statusCode();
+            }
+            case deleteTest -> {
+                // Deleting the newest test lets the next insert reuse its counter; see checkInvariants
+                String testnamn = tests.pollLast();
+                if (testnamn == null) {
+                    return 404;
+                }
+                Map<String, String> body = Map.of("Projekt", projekt, "Testnamn", testnamn);
+                HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/deleteTest"))
+                        .header("Content-Type", "application/json")
+                        .method("DELETE", HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body))));
+                if (response.statusCode() == 200 && response.body().startsWith("Deleted ")) {
+                    expectedRows.get(projekt).addAndGet(-Integer.parseInt(response.body().split(" ")[1]));
+                }
+                return response.statusCode();
+            }
+            default -> throw new IllegalArgumentException(op.name());
+        }
+    }
+
+    private void samplePools(List<HikariDataSource> pools, long end) {
+        while (System.nanoTime() < end) {
+            for (HikariDataSource pool : pools) {
+                if (pool.getHikariPoolMXBean() != null) {
+                    maxThreadsAwaiting.accumulateAndGet(pool.getHikariPoolMXBean().getThreadsAwaitingConnection(), Math::max);
+                }
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void report(double seconds, PoolSizingAdvisor advisor) {
+        System.out.printf("%n%-14s %9s %9s %7s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "req/s", "errors", "404", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        long totalRequests = 0;
+        long totalErrors = 0;
+        for (Op op : Op.values()) {
+            LatencyHistogram h = latencies.get(op);
+            long errorCount = errors.get(op).sum();
+            totalRequests += h.count();
+            totalErrors += errorCount;
+            System.out.printf("%-14s %9d %9.1f %7d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    op, h.count(), h.count() / seconds, errorCount, notFound.get(op).sum(),
+                    h.meanMicros() / 1000.0, h.percentileMicros(50) / 1000.0, h.percentileMicros(90) / 1000.0,
+                    h.percentileMicros(99) / 1000.0, h.maxMicros() / 1000.0);
+        }
+        System.out.printf("%-14s %9d %9.1f %7d   error rate %.3f%%%n", "total", totalRequests, totalRequests / seconds,
+                totalErrors, totalRequests == 0 ? 0 : 100.0 * totalErrors / totalRequests);
+
+        System.out.printf("%nHikari pools (measured window), max threads awaiting a connection: %d%n", maxThreadsAwaiting.get());
+        advisor.report().forEach((pool, stats) -> System.out.printf("  %-12s %s%n", pool, ((Map<?, ?>) stats).get("lastWindow")));
+    }
+
+    // Every project must hold exactly the rows the clients inserted and did not delete (no lost or phantom writes),
+    // and no two of its remaining tests may share a counter. Counters are the project's highest counter + 1, so
+    // deleting the newest test lets the next insert get its counter again; that reuse is reported, and would be a
+    // violation if it ever duplicated the counter of a test that still exists.
+    private List<String> checkInvariants() throws IOException, InterruptedException {
+        System.out.println("\nCounters handed out more than once (the newest test was deleted):");
+        issuedCounters.forEach((projekt, counters) -> {
+            long reused = counters.values().stream().filter(count -> count > 1).count();
+            int extra = counters.values().stream().mapToInt(count -> count - 1).sum();
+            System.out.printf("  %-12s %d counter(s) reused, %d extra test(s)%n", projekt, reused, extra);
+        });
+        List<String> violations = new ArrayList<>();
+        for (String projekt : projects) {
+            HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/getData?projekt=" + encode(projekt))).GET());
+            if (response.statusCode() != 200) {
+                violations.add(projekt + ": getData returned " + response.statusCode());
+                continue;
+            }
+            JsonNode rows = objectMapper.readTree(response.body());
+            if (rows.size() != expectedRows.get(projekt).get()) {
+                violations.add(projekt + ": " + rows.size() + " rows stored, expected " + expectedRows.get(projekt).get());
+            }
+            Map<String, Integer> counters = new HashMap<>();
+            for (JsonNode row : rows) {
+                counters.merge(counter(row.get("TESTNAMN").asText()), 1, Integer::sum);
+            }
+            counters.forEach((counter, count) -> {
+                if (count > 1) {
+                    violations.add(projekt + ": counter " + counter + " used by " + count + " remaining tests");
+                }
+            });
+        }
+        return violations;
+    }
+
+    private static String counter(String testnamn) {
+        return testnamn.substring(0, Math.max(testnamn.indexOf('_'), 0));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return http.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static Map<Op, Integer> parseMix(String mix) {
+        Map<Op, Integer> weights = new EnumMap<>(Op.class);
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split("=");
+            weights.put(Op.valueOf(kv[0].trim()), Integer.parseInt(kv[1].trim()));
+        }
+        return weights;
+    }
+
+    private static void sleepUntil(long nanoTime) throws InterruptedException {
+        long remaining = nanoTime - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package se.ptlog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Column header plus value arrays, so bulk responses don't repeat every column name on every row
+public record CompactRows(List<String> columns, List<List<Object>> rows) {
+
+    public static final String MEDIA_TYPE = "application/vnd.ptlog.compact+json";
+
+    public static CompactRows of(List<Map<String, Object>> maps) {
+        if (maps == null || maps.isEmpty()) {
+            return new CompactRows(List.of(), List.of());
+        }
+
+        List<String> columns = new ArrayList<>(maps.get(0).keySet());
+        List<List<Object>> rows = new ArrayList<>(maps.size());
+        for (Map<String, Object> map : maps) {
+            List<Object> row = new ArrayList<>(columns.size());
+            for (String column : columns) {
+                row.add(map.get(column));
+            }
+            rows.add(row);
+        }
+        return new CompactRows(columns, rows);
+    }
+}
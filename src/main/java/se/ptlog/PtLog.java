@@ -9,19 +9,35 @@ import io.swagger.v3.oas.annotations.info.Contact;
 import io.swagger.v3.oas.annotations.info.Info;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.bind.annotation.*;
+import se.ptlog.compression.AnalysCompression;
+import se.ptlog.config.PoolSizingAdvisor;
+import se.ptlog.h2.H2Maintenance;
+import se.ptlog.history.EditHistory;
+import se.ptlog.idempotency.IdempotencyStore;
+import se.ptlog.purge.ProjectPurge;
+import se.ptlog.readmodel.ChangeLog;
+import se.ptlog.readmodel.ReadModel;
+import se.ptlog.results.ResultStore;
+import se.ptlog.trace.SqlTracer;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 import javax.sql.DataSource;
+import java.io.IOException;
 import java.sql.*;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 import com.zaxxer.hikari.HikariDataSource;
 
@@ -36,23 +52,37 @@ import com.zaxxer.hikari.HikariDataSource;
                         "**Active Projects**\n" +
                         "2. **GET /populate** - List active projects (ARKIVERAD = 0).\n" +
                         "3. **GET /getData?projekt={projekt}** - Retrieve test logs for a project.\n" +
+                        "   Send Accept: application/vnd.ptlog.compact+json (also /getAllProjectsWithInfo) for column header + value arrays.\n" +
                         "4. **POST /createProject** - Create new project with optional description.\n" +
                         "5. **GET /getProjectInfo?projekt={projekt}** - Get project info including description.\n" +
                         "6. **GET /getAllProjectsWithInfo** - Get all projects with descriptions.\n" +
                         "7. **PUT /updateProjectBeskrivning** - Update project description.\n" +
                         "8. **POST /insert** - Insert test log.\n" +
+                        "   /insert, /addKonfig and /addGenerellKonfig accept an Idempotency-Key header: a repeated key returns the original response.\n" +
                         "9. **PUT /updateAnalys** - Update analysis for a test.\n" +
                         "10. **POST /addKonfig** - Add pacing configuration.\n" +
                         "11. **POST /addGenerellKonfig** - Add general configuration.\n" +
-                        "12. **DELETE /deleteTest** - Delete specific test.\n\n" +
+                        "12. **DELETE /deleteTest** - Delete specific test.\n" +
+                        "    **GET /getHistory?projekt={projekt}&testnamn={testnamn}&falt=ANALYS|SYFTE** - List earlier versions of a test's analysis or purpose.\n" +
+                        "    **GET /getHistoryVersion?projekt={projekt}&testnamn={testnamn}&falt=ANALYS|SYFTE&version={version}** - Rebuild one version.\n" +
+                        "    **POST /uploadResultat?projekt={projekt}&testnamn={testnamn}** - Upload a JMeter JTL (CSV) or Gatling simulation.log, optionally gzipped.\n" +
+                        "    **GET /getResultat?projekt={projekt}&testnamn={testnamn}** - Uploaded results with percentiles, throughput and errors per transaction.\n" +
+                        "    **GET /getResultatPercentiler?resultatId={id}&percentiler=50,99.9** - Any percentiles of the whole test or one transaction.\n" +
+                        "    **GET /getResultatTidsserie?resultatId={id}** - Throughput and errors over time. **DELETE /deleteResultat?resultatId={id}**\n\n" +
                         "**Archived Projects**\n" +
                         "13. **GET /populateArkiverade** - List archived projects (ARKIVERAD = 1).\n" +
                         "14. **POST /arkivera?namn={namn}** - Archive a project.\n" +
                         "15. **POST /restore?namn={namn}** - Restore archived project.\n" +
-                        "16. **DELETE /deleteProject** - Permanently delete project and all its tests.\n\n" +
+                        "16. **DELETE /deleteProject** - Permanently delete project and all its tests (purged in the background).\n" +
+                        "    **GET /deleteProject/status?projekt={projekt}** - Progress of the purge.\n\n" +
                         "**Monitoring**\n" +
                         "17. **GET /dbpool** - Database connection pool statistics.\n" +
-                        "18. **GET /dbinfo** - Database information.\n"
+                        "    **POST /dbpool/resize?pool={pool}&size={size}** - Resize a connection pool at runtime.\n" +
+                        "18. **GET /dbinfo** - Database information.\n" +
+                        "19. **GET /sqltrace** - Slow SQL statements with the request that ran them.\n" +
+                        "    **POST /sqltrace?enabled={true|false}&slowThresholdMs={ms}&clear={true|false}** - Switch SQL tracing at runtime.\n" +
+                        "20. **GET /dbstorage** - H2 file size, fill rate, cache and backup status.\n" +
+                        "    **POST /dbstorage/backup** - Online H2 backup. **POST /dbstorage/compact** - Compact the H2 file online.\n"
         ),
         externalDocs = @ExternalDocumentation(
                 description = "GitHub Repository",
@@ -69,10 +99,62 @@ public class PtLog {
 
     private static final Logger logger = LoggerFactory.getLogger(PtLog.class);
     private final DataSource dataSource;
+    private final DataSource readDataSource;
+    private final DataSource metaDataSource;
+    private final PoolSizingAdvisor poolSizingAdvisor;
+    private final ReadModel readModel;
+    private final ChangeLog changeLog;
+    private final EditHistory editHistory;
+    private final SqlTracer sqlTracer;
+    private final IdempotencyStore idempotencyStore;
+    private final H2Maintenance h2Maintenance;
+    private final AnalysCompression analysCompression;
+    private final ResultStore resultStore;
+    private final ProjectPurge projectPurge;
+
+    // Identical concurrent reads share one query, see SingleFlight
+    private final SingleFlight<String, List<Map<String, Object>>> dataFlights = new SingleFlight<>();
+    private final SingleFlight<String, Map<String, Object>> projectInfoFlights = new SingleFlight<>();
+    private final SingleFlight<Boolean, List<Map<String, Object>>> projectListFlights = new SingleFlight<>();
+
+    // Archived projects have their tests in PTLOG_ARKIV, so /getData reads both. Tests added to an archived project
+    // go to PTLOG and stay there until it is restored; IDs are unique across both tables, so the move never collides.
+    private static final String GET_DATA_COLUMNS = "TO_CHAR(DATUM, 'YYYY-MM-DD HH24:MI') AS DATUM, " +
+            "TYP, TESTNAMN, SYFTE, ANALYS, ANALYS_KOMPRIMERAD, PROJEKT, TESTARE, MARKERA ";
+    public static final String GET_DATA_SQL = "SELECT " + GET_DATA_COLUMNS + "FROM ptlog WHERE PROJEKT = ? " +
+            "UNION ALL " +
+            "SELECT " + GET_DATA_COLUMNS + "FROM PTLOG_ARKIV WHERE PROJEKT = ? " +
+            "ORDER BY DATUM DESC";
+
+    // Tests of archived projects live in PTLOG_ARKIV, so writes to a test go to both tables
+    private static final List<String> TEST_TABLES = List.of("PTLOG", "PTLOG_ARKIV");
+
+    // Column list shared by PTLOG and PTLOG_ARKIV, IDs are kept when rows move between them
+    private static final String PTLOG_COLUMNS =
+            "ID, DATUM, TYP, TESTNAMN, SYFTE, ANALYS, ANALYS_KOMPRIMERAD, PROJEKT, TESTARE, MARKERA";
 
     // ✅ Constructor injection ensures dataSource is not null
-    public PtLog(DataSource dataSource) {
+    public PtLog(DataSource dataSource,
+                 @Qualifier("readDataSource") DataSource readDataSource,
+                 @Qualifier("metaDataSource") DataSource metaDataSource,
+                 PoolSizingAdvisor poolSizingAdvisor,
+                 ReadModel readModel, ChangeLog changeLog, EditHistory editHistory,
+                 SqlTracer sqlTracer, IdempotencyStore idempotencyStore, H2Maintenance h2Maintenance,
+                 AnalysCompression analysCompression, ResultStore resultStore,
+                 ProjectPurge projectPurge) {
         this.dataSource = dataSource;
+        this.readDataSource = readDataSource;
+        this.metaDataSource = metaDataSource;
+        this.poolSizingAdvisor = poolSizingAdvisor;
+        this.readModel = readModel;
+        this.changeLog = changeLog;
+        this.editHistory = editHistory;
+        this.sqlTracer = sqlTracer;
+        this.idempotencyStore = idempotencyStore;
+        this.h2Maintenance = h2Maintenance;
+        this.analysCompression = analysCompression;
+        this.resultStore = resultStore;
+        this.projectPurge = projectPurge;
         logger.info("🚀 PtLog initialized with DataSource: {}", dataSource.getClass().getName());
     }
 
@@ -88,7 +170,7 @@ public class PtLog {
         headers.add(HttpHeaders.CONTENT_TYPE, "application/json; charset=UTF-8");
 
         // Check database connectivity
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = metaDataSource.getConnection();
              Statement stmt = conn.createStatement()) {
 
             // Execute a simple query to verify database is responsive
@@ -119,25 +201,38 @@ public class PtLog {
     @CrossOrigin(origins = "*")
     @GetMapping("/getProjectInfo")
     public ResponseEntity<Map<String, Object>> getProjectInfo(@RequestParam String projekt) {
-        String sql = "SELECT NAMN, BESKRIVNING, ARKIVERAD FROM PTLOG_PROJEKT WHERE NAMN = ?";
+        Map<String, Object> cached = readModel.projectInfo(projekt);
+        if (cached != null) {
+            return ResponseEntity.ok(cached);
+        }
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, projekt);
+        String sql = "SELECT NAMN, BESKRIVNING, ARKIVERAD FROM PTLOG_PROJEKT WHERE NAMN = ? AND RADERAD = 0";
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    Map<String, Object> projectInfo = new LinkedHashMap<>();
-                    projectInfo.put("namn", rs.getString("NAMN"));
-                    projectInfo.put("beskrivning", rs.getString("BESKRIVNING"));
-                    projectInfo.put("arkiverad", rs.getInt("ARKIVERAD"));
-
-                    logger.info("Retrieved info for project: {}", projekt);
-                    return ResponseEntity.ok(projectInfo);
-                } else {
-                    return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                            .body(Map.of("error", "Project not found: " + projekt));
+        try {
+            Map<String, Object> projectInfo = projectInfoFlights.execute(projekt, () -> {
+                try (Connection conn = readDataSource.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, projekt);
+
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (!rs.next()) {
+                            return null;
+                        }
+                        Map<String, Object> info = new LinkedHashMap<>();
+                        info.put("namn", rs.getString("NAMN"));
+                        info.put("beskrivning", rs.getString("BESKRIVNING"));
+                        info.put("arkiverad", rs.getInt("ARKIVERAD"));
+                        return info;
+                    }
                 }
+            });
+
+            if (projectInfo != null) {
+                logger.info("Retrieved info for project: {}", projekt);
+                return ResponseEntity.ok(projectInfo);
+            } else {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Project not found: " + projekt));
             }
         } catch (SQLException e) {
             logger.error("Failed to get project info: {}", e.getMessage());
@@ -150,23 +245,32 @@ public class PtLog {
     @CrossOrigin(origins = "*")
     @GetMapping("/getAllProjectsWithInfo")
     public ResponseEntity<List<Map<String, Object>>> getAllProjectsWithInfo(@RequestParam(defaultValue = "false") boolean includeArchived) {
-        String sql = "SELECT NAMN, BESKRIVNING, ARKIVERAD FROM PTLOG_PROJEKT " +
-                (includeArchived ? "" : "WHERE ARKIVERAD = 0 ") +
-                "ORDER BY NAMN";
-
-        List<Map<String, Object>> projects = new ArrayList<>();
+        List<Map<String, Object>> cached = readModel.projectsWithInfo(includeArchived);
+        if (cached != null) {
+            return ResponseEntity.ok(cached);
+        }
 
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        String sql = "SELECT NAMN, BESKRIVNING, ARKIVERAD FROM PTLOG_PROJEKT WHERE RADERAD = 0 " +
+                (includeArchived ? "" : "AND ARKIVERAD = 0 ") +
+                "ORDER BY NAMN";
 
-            while (rs.next()) {
-                Map<String, Object> project = new LinkedHashMap<>();
-                project.put("namn", rs.getString("NAMN"));
-                project.put("beskrivning", rs.getString("BESKRIVNING"));
-                project.put("arkiverad", rs.getInt("ARKIVERAD"));
-                projects.add(project);
-            }
+        try {
+            List<Map<String, Object>> projects = projectListFlights.execute(includeArchived, () -> {
+                List<Map<String, Object>> rows = new ArrayList<>();
+                try (Connection conn = readDataSource.getConnection();
+                     Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(sql)) {
+
+                    while (rs.next()) {
+                        Map<String, Object> project = new LinkedHashMap<>();
+                        project.put("namn", rs.getString("NAMN"));
+                        project.put("beskrivning", rs.getString("BESKRIVNING"));
+                        project.put("arkiverad", rs.getInt("ARKIVERAD"));
+                        rows.add(project);
+                    }
+                }
+                return rows;
+            });
 
             logger.info("Retrieved {} projects with info", projects.size());
             return ResponseEntity.ok(projects);
@@ -176,19 +280,39 @@ public class PtLog {
                     .body(null);
         }
     }
+
+    // Same data as /getAllProjectsWithInfo, selected with Accept: application/vnd.ptlog.compact+json
+    @CrossOrigin(origins = "*")
+    @GetMapping(value = "/getAllProjectsWithInfo", produces = CompactRows.MEDIA_TYPE)
+    public ResponseEntity<CompactRows> getAllProjectsWithInfoCompact(@RequestParam(defaultValue = "false") boolean includeArchived) {
+        ResponseEntity<List<Map<String, Object>>> response = getAllProjectsWithInfo(includeArchived);
+        return ResponseEntity.status(response.getStatusCode())
+                .body(response.getBody() != null ? CompactRows.of(response.getBody()) : null);
+    }
     @CrossOrigin(origins = "*")
     @GetMapping("/getData")
     public List<Map<String, Object>> getData(@RequestParam String projekt) throws SQLException {
-        String sql = "SELECT " +
-                "TO_CHAR(DATUM, 'YYYY-MM-DD HH24:MI') AS DATUM, " +
-                "TYP, TESTNAMN, SYFTE, ANALYS, PROJEKT, TESTARE, MARKERA " +
-                "FROM ptlog WHERE PROJEKT = ? ORDER BY DATUM DESC";
-        return OraSQL(sql, projekt);
+        if (projectPurge.isDeleted(projekt)) {
+            return List.of();
+        }
+        List<Map<String, Object>> cached = readModel.tests(projekt);
+        if (cached != null) {
+            return cached;
+        }
+
+        return dataFlights.execute(projekt, () -> OraSQL(GET_DATA_SQL, projekt, projekt));
+    }
+
+    // Same data as /getData, selected with Accept: application/vnd.ptlog.compact+json
+    @CrossOrigin(origins = "*")
+    @GetMapping(value = "/getData", produces = CompactRows.MEDIA_TYPE)
+    public CompactRows getDataCompact(@RequestParam String projekt) throws SQLException {
+        return CompactRows.of(getData(projekt));
     }
 
     public List<Map<String, Object>> OraSQL(String query, String... params) throws SQLException {
         List<Map<String, Object>> resultList = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = readDataSource.getConnection();
              PreparedStatement st = conn.prepareStatement(query)) {
 
             for (int i = 0; i < params.length; i++) {
@@ -201,15 +325,8 @@ public class PtLog {
                 while (rs.next()) {
                     Map<String, Object> row = new LinkedHashMap<>();
                     for (int i = 1; i <= colCount; i++) {
-                        Object value = rs.getObject(i);
-
-                        // Convert CLOB to String for JSON serialization (H2 compatibility)
-                        if (value instanceof java.sql.Clob) {
-                            java.sql.Clob clob = (java.sql.Clob) value;
-                            value = clob.getSubString(1, (int) clob.length());
-                        }
-
-                        row.put(rsmd.getColumnName(i), value);
+                        // CLOBs become Strings, compressed analyses are decoded into ANALYS
+                        AnalysCompression.putColumn(row, rs, i, rsmd.getColumnName(i));
                     }
                     resultList.add(row);
                 }
@@ -221,22 +338,63 @@ public class PtLog {
     @CrossOrigin(origins = "*")
     @PostMapping("/restore")
     public void restoreProjekt(@RequestParam String namn) throws SQLException {
-        String sql = "UPDATE PTLOG_PROJEKT SET ARKIVERAD = 0 WHERE NAMN = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, namn);
-            pstmt.executeUpdate();
+        String sql = "UPDATE PTLOG_PROJEKT SET ARKIVERAD = 0 WHERE NAMN = ? AND ARKIVERAD = 1 AND RADERAD = 0";
+        String moveSql = "INSERT INTO PTLOG (" + PTLOG_COLUMNS + ") " +
+                "SELECT " + PTLOG_COLUMNS + " FROM PTLOG_ARKIV WHERE PROJEKT = ?";
+        String deleteSql = "DELETE FROM PTLOG_ARKIV WHERE PROJEKT = ?";
+        moveProjectRows(namn, sql, moveSql, deleteSql, "Restored");
+    }
+
+    // Flips ARKIVERAD and moves the project's tests between PTLOG and PTLOG_ARKIV in one transaction
+    private void moveProjectRows(String namn, String flagSql, String moveSql, String deleteSql,
+                                 String action) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int flagged;
+                try (PreparedStatement pstmt = conn.prepareStatement(flagSql)) {
+                    pstmt.setString(1, namn);
+                    flagged = pstmt.executeUpdate();
+                }
+
+                int moved = 0;
+                if (flagged > 0) {
+                    try (PreparedStatement pstmt = conn.prepareStatement(moveSql)) {
+                        pstmt.setString(1, namn);
+                        moved = pstmt.executeUpdate();
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement(deleteSql)) {
+                        pstmt.setString(1, namn);
+                        pstmt.executeUpdate();
+                    }
+                }
+
+                conn.commit();
+                projectChanged(namn);
+                logger.info("{} project: {} ({} test(s) moved)", action, namn, moved);
+            } catch (SQLException e) {
+                conn.rollback();
+                logger.error("Failed to move tests for project {}: {}", namn, e.getMessage());
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
         }
     }
     @CrossOrigin(origins = "*")
     @GetMapping("/populate")
     public List<String> getAllProjekts() throws SQLException {
+        List<String> cached = readModel.activeProjects();
+        if (cached != null) {
+            return cached;
+        }
+
         String sql = "SELECT DISTINCT NAMN " +
                 "FROM PTLOG_PROJEKT " +
-                "WHERE ARKIVERAD = 0 " +
+                "WHERE ARKIVERAD = 0 AND RADERAD = 0 " +
                 "ORDER BY NAMN";
         List<String> projekts = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = readDataSource.getConnection();
              Statement st = conn.createStatement();
              ResultSet rs = st.executeQuery(sql)) {
             while (rs.next()) {
@@ -248,12 +406,12 @@ public class PtLog {
     @CrossOrigin(origins = "*")
     @PostMapping("/arkivera")
     public void arkiveraProjekt(@RequestParam String namn) throws SQLException {
-        String sql = "UPDATE PTLOG_PROJEKT SET ARKIVERAD = 1 WHERE NAMN = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, namn);
-            pstmt.executeUpdate();
-        }
+        String sql = "UPDATE PTLOG_PROJEKT SET ARKIVERAD = 1 WHERE NAMN = ? AND ARKIVERAD = 0 AND RADERAD = 0";
+        // APPEND gives a direct-path insert on Oracle so the archive blocks get compressed (ignored by H2)
+        String moveSql = "INSERT /*+ APPEND */ INTO PTLOG_ARKIV (" + PTLOG_COLUMNS + ") " +
+                "SELECT " + PTLOG_COLUMNS + " FROM PTLOG WHERE PROJEKT = ?";
+        String deleteSql = "DELETE FROM PTLOG WHERE PROJEKT = ?";
+        moveProjectRows(namn, sql, moveSql, deleteSql, "Archived");
     }
 
     @CrossOrigin(origins = "*")
@@ -261,10 +419,10 @@ public class PtLog {
     public List<String> getArkiveradeProjekts() throws SQLException {
         String sql = "SELECT DISTINCT NAMN " +
                 "FROM PTLOG_PROJEKT " +
-                "WHERE ARKIVERAD = 1 " +
+                "WHERE ARKIVERAD = 1 AND RADERAD = 0 " +
                 "ORDER BY NAMN";
         List<String> projekts = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = readDataSource.getConnection();
              Statement st = conn.createStatement();
              ResultSet rs = st.executeQuery(sql)) {
             while (rs.next()) {
@@ -274,6 +432,7 @@ public class PtLog {
         return projekts;
     }
 
+    // Tombstones the project and returns at once, its rows are purged in the background by ProjectPurge
     @CrossOrigin(origins = "*")
     @DeleteMapping("/deleteProject")
     public ResponseEntity<String> deleteProject(@RequestBody Map<String, String> payload) {
@@ -283,38 +442,35 @@ public class PtLog {
                     .body("Projekt name is required");
         }
 
-        String deletePTLOGSql = "DELETE FROM PTLOG WHERE PROJEKT = ?";
-        String deleteProjektSql = "DELETE FROM PTLOG_PROJEKT WHERE NAMN = ?";
-
-        try (Connection conn = dataSource.getConnection()) {
-            // Use transaction
-            conn.setAutoCommit(false);
-
-            int deletedRowsPTLOG;
-            try (PreparedStatement stmt = conn.prepareStatement(deletePTLOGSql)) {
-                stmt.setString(1, projektName.trim());
-                deletedRowsPTLOG = stmt.executeUpdate();
-            }
-
-            int deletedRowsProjekt;
-            try (PreparedStatement stmt = conn.prepareStatement(deleteProjektSql)) {
-                stmt.setString(1, projektName.trim());
-                deletedRowsProjekt = stmt.executeUpdate();
-            }
-
-            conn.commit();
-
-            if (deletedRowsProjekt == 0) {
+        try {
+            if (!projectPurge.delete(projektName.trim())) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body("No project found with name: " + projektName);
             }
+            projectChanged(projektName.trim());
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body("Deleted project: " + projektName +
+                            ", its rows are purged in the background (GET /deleteProject/status)");
+        } catch (SQLException e) {
+            logger.error("Failed to delete project: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
 
-            return ResponseEntity.ok("Deleted project: " + projektName +
-                    " (" + deletedRowsProjekt + " row(s)) and " +
-                    deletedRowsPTLOG + " associated PTLOG row(s)");
-
+    // Progress of project purges, of one project or all recent ones
+    @CrossOrigin(origins = "*")
+    @GetMapping("/deleteProject/status")
+    public ResponseEntity<?> deleteProjectStatus(@RequestParam(required = false) String projekt) {
+        try {
+            List<Map<String, Object>> jobs = projectPurge.status(projekt);
+            if (projekt != null && jobs.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body("No deletion found for project: " + projekt);
+            }
+            return ResponseEntity.ok(jobs);
         } catch (SQLException e) {
-            e.printStackTrace();
+            logger.error("Failed to read project deletions: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Database error: " + e.getMessage());
         }
@@ -334,9 +490,15 @@ public class PtLog {
         String sql = "INSERT INTO PTLOG_PROJEKT (NAMN, BESKRIVNING) VALUES (?, ?)";
         try (Connection conn = dataSource.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            // The old project's rows would otherwise be purged into the new one
+            if (projectPurge.hasPendingPurge(projektName.trim())) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body("Project " + projektName + " is still being deleted, try again later");
+            }
             stmt.setString(1, projektName.trim());
             stmt.setString(2, beskrivning != null ? beskrivning.trim() : ""); // Handle null description
             int rows = stmt.executeUpdate();
+            projectChanged(projektName.trim());
             logger.info("Created project: {} with description", projektName);
             return ResponseEntity.ok("Inserted project: " + projektName + " (" + rows + " row(s))");
         } catch (SQLException e) {
@@ -348,10 +510,18 @@ public class PtLog {
 
 
     public int countRowsForProject(String projekt) throws SQLException {
-        String sql = "SELECT COUNT(*) AS CNT FROM ptlog WHERE PROJEKT = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getConnection()) {
+            return countRowsForProject(conn, projekt);
+        }
+    }
+
+    private int countRowsForProject(Connection conn, String projekt) throws SQLException {
+        // Include archived tests so counters stay unique if an archived project gets new entries
+        String sql = "SELECT (SELECT COUNT(*) FROM ptlog WHERE PROJEKT = ?) + " +
+                "(SELECT COUNT(*) FROM PTLOG_ARKIV WHERE PROJEKT = ?) AS CNT FROM DUAL";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, projekt);
+            ps.setString(2, projekt);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
                     int count = rs.getInt("CNT");
@@ -364,6 +534,101 @@ public class PtLog {
         return 0;
     }
 
+    // The highest numeric TESTNAMN prefix ("07_REF_x" -> 7) in the project, archived tests included.
+    // The row count would hand out a counter again after a delete and give two tests the same TESTNAMN.
+    private int highestCounter(Connection conn, String projekt) throws SQLException {
+        String sql = "SELECT MAX(CAST(REGEXP_SUBSTR(TESTNAMN, '^[0-9]+') AS INTEGER)) AS HIGHEST FROM (" +
+                "SELECT TESTNAMN FROM ptlog WHERE PROJEKT = ? " +
+                "UNION ALL SELECT TESTNAMN FROM PTLOG_ARKIV WHERE PROJEKT = ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, projekt);
+            ps.setString(2, projekt);
+            try (ResultSet rs = ps.executeQuery()) {
+                int highest = rs.next() ? rs.getInt("HIGHEST") : 0;
+                logger.info("Project '{}' has highest counter {}", projekt, highest);
+                return highest;
+            }
+        }
+    }
+
+    /**
+     * Finds the project's highest counter and inserts the next numbered row in one transaction while holding the
+     * project row lock, so concurrent inserts into the same project (on any instance) never get the same counter.
+     * An Idempotency-Key is looked up under the same lock and stored with the row, so a retry that arrives while the
+     * original is still running waits for it and then gets its response instead of inserting again.
+     */
+    private InsertResult insertWithCounter(String projekt, String idempotencyKey, String fingerprint,
+                                           CountedInsert insert, UnaryOperator<String> responseBody) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement lock = conn.prepareStatement(
+                        "SELECT RADERAD FROM PTLOG_PROJEKT WHERE NAMN = ? FOR UPDATE")) {
+                    lock.setString(1, projekt);
+                    try (ResultSet rs = lock.executeQuery()) {
+                        if (rs.next() && rs.getInt(1) == 1) {
+                            throw new SQLException("Project " + projekt + " is being deleted");
+                        }
+                    }
+                }
+                if (idempotencyKey != null) {
+                    IdempotencyStore.Stored stored = idempotencyStore.find(conn, idempotencyKey);
+                    if (stored != null) {
+                        conn.commit();
+                        idempotencyStore.remember(idempotencyKey, stored);
+                        return new InsertResult(null, stored.body(), stored);
+                    }
+                }
+                String testnamn = insert.insert(conn, highestCounter(conn, projekt) + 1);
+                String body = responseBody.apply(testnamn);
+                IdempotencyStore.Stored saved = idempotencyKey == null ? null
+                        : idempotencyStore.save(conn, idempotencyKey, fingerprint, body);
+                conn.commit();
+                if (saved != null) {
+                    idempotencyStore.remember(idempotencyKey, saved);
+                }
+                return new InsertResult(testnamn, body, null);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface CountedInsert {
+        String insert(Connection conn, int counter) throws SQLException;
+    }
+
+    // replayed is set when the Idempotency-Key was already used, body is then the original response
+    private record InsertResult(String testnamn, String body, IdempotencyStore.Stored replayed) {
+    }
+
+    // Answers a repeated Idempotency-Key from memory; null when the request has to run
+    private ResponseEntity<String> replayIfKnown(String idempotencyKey, String fingerprint) {
+        if (idempotencyKey == null) {
+            return null;
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyStore.MAX_KEY_LENGTH) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Idempotency-Key must be 1 to " + IdempotencyStore.MAX_KEY_LENGTH + " characters");
+        }
+        return replay(idempotencyStore.lookup(idempotencyKey), fingerprint);
+    }
+
+    private ResponseEntity<String> replay(IdempotencyStore.Stored stored, String fingerprint) {
+        if (stored == null) {
+            return null;
+        }
+        if (!stored.fingerprint().equals(fingerprint)) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body("Idempotency-Key was already used for a different request");
+        }
+        return ResponseEntity.ok().header("Idempotent-Replayed", "true").body(stored.body());
+    }
+
     @CrossOrigin(origins = "*")
     @PutMapping("/updateProjectBeskrivning")
     public ResponseEntity<String> updateProjectBeskrivning(@RequestBody String json) {
@@ -385,7 +650,7 @@ public class PtLog {
                     .body("Missing required field: " + e.getMessage());
         }
 
-        String sql = "UPDATE PTLOG_PROJEKT SET BESKRIVNING = ? WHERE NAMN = ?";
+        String sql = "UPDATE PTLOG_PROJEKT SET BESKRIVNING = ? WHERE NAMN = ? AND RADERAD = 0";
         try (Connection conn = dataSource.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, beskrivning.trim());
@@ -396,6 +661,7 @@ public class PtLog {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body("No project found with name: " + projektName);
             }
+            projectChanged(projektName.trim());
             logger.info("Updated description for project: {}", projektName);
             return ResponseEntity.ok("Updated description for project: " + projektName);
         } catch (SQLException e) {
@@ -407,7 +673,14 @@ public class PtLog {
 
     @CrossOrigin(origins = "*")
     @PostMapping("/insert")
-    public ResponseEntity<String> insertLog(@RequestBody String json) {
+    public ResponseEntity<String> insertLog(@RequestBody String json,
+                                            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        String fingerprint = IdempotencyStore.fingerprint("/insert", json);
+        ResponseEntity<String> replayed = replayIfKnown(idempotencyKey, fingerprint);
+        if (replayed != null) {
+            return replayed;
+        }
+
         ObjectMapper objectMapper = new ObjectMapper();
         JsonNode node;
         try {
@@ -430,33 +703,31 @@ public class PtLog {
                     .body("Missing required field: " + e.getMessage());
         }
 
-        int count;
-        try {
-            count = countRowsForProject(projekt);
-        } catch (SQLException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Failed to count rows: " + e.getMessage());
-        }
-
-        String counterStr = String.format("%02d", count + 1);
         String prefix = getTestTypePrefix(typ);
-        testnamn = counterStr + "_" + prefix + "_" + testnamn;
 
         TimeZone.setDefault(TimeZone.getTimeZone("Europe/Stockholm"));
 
         String sql = "INSERT INTO PTLOG (DATUM, TYP, TESTNAMN, SYFTE, PROJEKT, TESTARE) VALUES (?, ?, ?, ?, ?, ?)";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setTimestamp(1, Timestamp.from(Instant.parse(datum)));
-            stmt.setString(2, typ);
-            stmt.setString(3, testnamn);
-            stmt.setString(4, syfte);
-            stmt.setString(5, projekt);
-            stmt.setString(6, testare);
-
-            int rows = stmt.executeUpdate();
-            logger.info("Inserted test: {} for project: {}", testnamn, projekt);
-            return ResponseEntity.ok("Inserted " + rows + " row(s) with testnamn: " + testnamn);
+        try {
+            InsertResult result = insertWithCounter(projekt, idempotencyKey, fingerprint, (conn, counter) -> {
+                String numbered = String.format("%02d", counter) + "_" + prefix + "_" + testnamn;
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setTimestamp(1, Timestamp.from(Instant.parse(datum)));
+                    stmt.setString(2, typ);
+                    stmt.setString(3, numbered);
+                    stmt.setString(4, syfte);
+                    stmt.setString(5, projekt);
+                    stmt.setString(6, testare);
+                    stmt.executeUpdate();
+                }
+                return numbered;
+            }, numbered -> "Inserted 1 row(s) with testnamn: " + numbered);
+            if (result.replayed() != null) {
+                return replay(result.replayed(), fingerprint);
+            }
+            projectChanged(projekt);
+            logger.info("Inserted test: {} for project: {}", result.testnamn(), projekt);
+            return ResponseEntity.ok(result.body());
         } catch (SQLException e) {
             logger.error("Failed to insert test: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -479,7 +750,14 @@ public class PtLog {
 
     @CrossOrigin(origins = "*")
     @PostMapping("/addKonfig")
-    public ResponseEntity<String> addKonfig(@RequestBody String json) {
+    public ResponseEntity<String> addKonfig(@RequestBody String json,
+                                            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        String fingerprint = IdempotencyStore.fingerprint("/addKonfig", json);
+        ResponseEntity<String> replayed = replayIfKnown(idempotencyKey, fingerprint);
+        if (replayed != null) {
+            return replayed;
+        }
+
         ObjectMapper objectMapper = new ObjectMapper();
         JsonNode node;
         try {
@@ -504,21 +782,10 @@ public class PtLog {
                     .body("Missing required fields: " + e.getMessage());
         }
 
-        // Get counter for this project
-        int count;
-        try {
-            count = countRowsForProject(projekt);
-        } catch (SQLException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Failed to count rows: " + e.getMessage());
-        }
-
-        String counterStr = String.format("%02d", count + 1);
         // Determine config type based on testnamn (PACING stays as PACING, others default to PAC)
         String configType = testnamn.equalsIgnoreCase("PACING") ? "PAC" : "PAC";
-        String finalTestnamn = counterStr + "_" + configType + "_" +
-                (testnamn.equalsIgnoreCase("KONFIG") ? "Konfig" :
-                        testnamn.equalsIgnoreCase("CONFIG") ? "Config" : testnamn);
+        String suffix = testnamn.equalsIgnoreCase("KONFIG") ? "Konfig" :
+                testnamn.equalsIgnoreCase("CONFIG") ? "Config" : testnamn;
 
         // Format data for ANALYS field
         String analys = String.format("ReqH: %s | ReqS: %s | VU: %s | Pacing: %s | Skript: %s",
@@ -527,23 +794,32 @@ public class PtLog {
         // Determine TYP field based on language
         String typ = testnamn.equalsIgnoreCase("CONFIG") ? "CONFIG" : "KONFIG";
 
-        String sql = "INSERT INTO PTLOG (DATUM, TYP, TESTNAMN, SYFTE, ANALYS, PROJEKT, TESTARE) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO PTLOG (DATUM, TYP, TESTNAMN, SYFTE, ANALYS, PROJEKT, TESTARE, ANALYS_KOMPRIMERAD) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 
         TimeZone.setDefault(TimeZone.getTimeZone("Europe/Stockholm"));
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
-            stmt.setString(2, typ);
-            stmt.setString(3, finalTestnamn);
-            stmt.setString(4, typ); // Use same value for SYFTE
-            stmt.setString(5, analys);
-            stmt.setString(6, projekt);
-            stmt.setString(7, testare);
-
-            stmt.executeUpdate();
-            logger.info("Inserted {}: {} for project: {}", typ, finalTestnamn, projekt);
-            return ResponseEntity.ok(typ + " added successfully with testnamn: " + finalTestnamn);
+        try {
+            InsertResult result = insertWithCounter(projekt, idempotencyKey, fingerprint, (conn, counter) -> {
+                String numbered = String.format("%02d", counter) + "_" + configType + "_" + suffix;
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+                    stmt.setString(2, typ);
+                    stmt.setString(3, numbered);
+                    stmt.setString(4, typ); // Use same value for SYFTE
+                    analysCompression.bind(stmt, 5, 8, analys);
+                    stmt.setString(6, projekt);
+                    stmt.setString(7, testare);
+                    stmt.executeUpdate();
+                }
+                return numbered;
+            }, numbered -> typ + " added successfully with testnamn: " + numbered);
+            if (result.replayed() != null) {
+                return replay(result.replayed(), fingerprint);
+            }
+            projectChanged(projekt);
+            logger.info("Inserted {}: {} for project: {}", typ, result.testnamn(), projekt);
+            return ResponseEntity.ok(result.body());
         } catch (SQLException e) {
             logger.error("Failed to insert {}: {}", typ, e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -553,7 +829,14 @@ public class PtLog {
 
     @CrossOrigin(origins = "*")
     @PostMapping("/addGenerellKonfig")
-    public ResponseEntity<String> addGenerellKonfig(@RequestBody String json) {
+    public ResponseEntity<String> addGenerellKonfig(@RequestBody String json,
+                                                    @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        String fingerprint = IdempotencyStore.fingerprint("/addGenerellKonfig", json);
+        ResponseEntity<String> replayed = replayIfKnown(idempotencyKey, fingerprint);
+        if (replayed != null) {
+            return replayed;
+        }
+
         ObjectMapper objectMapper = new ObjectMapper();
         JsonNode node;
         try {
@@ -574,18 +857,7 @@ public class PtLog {
                     .body("Missing required fields: " + e.getMessage());
         }
 
-        // Get counter for this project
-        int count;
-        try {
-            count = countRowsForProject(projekt);
-        } catch (SQLException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Failed to count rows: " + e.getMessage());
-        }
-
-        String counterStr = String.format("%02d", count + 1);
-        String finalTestnamn = counterStr + "_GEN_" +
-                (testnamn.equalsIgnoreCase("CONFIG") ? "Config" : "Konfig");
+        String suffix = testnamn.equalsIgnoreCase("CONFIG") ? "Config" : "Konfig";
 
         // Determine TYP and SYFTE based on language
         String typ = testnamn.equalsIgnoreCase("CONFIG") ? "CONFIG" : "KONFIG";
@@ -593,21 +865,30 @@ public class PtLog {
 
         TimeZone.setDefault(TimeZone.getTimeZone("Europe/Stockholm"));
 
-        String sql = "INSERT INTO PTLOG (DATUM, TYP, TESTNAMN, SYFTE, ANALYS, PROJEKT, TESTARE) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO PTLOG (DATUM, TYP, TESTNAMN, SYFTE, ANALYS, PROJEKT, TESTARE, ANALYS_KOMPRIMERAD) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
-            stmt.setString(2, typ);
-            stmt.setString(3, finalTestnamn);
-            stmt.setString(4, syfte);
-            stmt.setString(5, beskrivning);
-            stmt.setString(6, projekt);
-            stmt.setString(7, testare);
-
-            stmt.executeUpdate();
-            logger.info("Inserted {} {}: {} for project: {}", syfte, typ, finalTestnamn, projekt);
-            return ResponseEntity.ok(syfte + " added successfully with testnamn: " + finalTestnamn);
+        try {
+            InsertResult result = insertWithCounter(projekt, idempotencyKey, fingerprint, (conn, counter) -> {
+                String numbered = String.format("%02d", counter) + "_GEN_" + suffix;
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+                    stmt.setString(2, typ);
+                    stmt.setString(3, numbered);
+                    stmt.setString(4, syfte);
+                    analysCompression.bind(stmt, 5, 8, beskrivning);
+                    stmt.setString(6, projekt);
+                    stmt.setString(7, testare);
+                    stmt.executeUpdate();
+                }
+                return numbered;
+            }, numbered -> syfte + " added successfully with testnamn: " + numbered);
+            if (result.replayed() != null) {
+                return replay(result.replayed(), fingerprint);
+            }
+            projectChanged(projekt);
+            logger.info("Inserted {} {}: {} for project: {}", syfte, typ, result.testnamn(), projekt);
+            return ResponseEntity.ok(result.body());
         } catch (SQLException e) {
             logger.error("Failed to insert {} {}: {}", syfte, typ, e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -639,18 +920,13 @@ public class PtLog {
                     .body("Missing required field: " + e.getMessage());
         }
 
-        String sql = "UPDATE PTLOG SET ANALYS = ? WHERE PROJEKT = ? AND TESTNAMN = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, analys);
-            stmt.setString(2, projekt);
-            stmt.setString(3, testnamn);
-
-            int rows = stmt.executeUpdate();
+        try {
+            int rows = updateWithHistory("ANALYS", projekt, testnamn, analys);
             if (rows == 0) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body("No row found with Projekt: " + projekt + " and Testnamn: " + testnamn);
             }
+            projectChanged(projekt);
             logger.info("Updated analysis for test: {} in project: {}", testnamn, projekt);
             return ResponseEntity.ok("Updated " + rows + " row(s)");
         } catch (SQLException e) {
@@ -660,6 +936,210 @@ public class PtLog {
         }
     }
 
+    // Updates ANALYS or SYFTE of a test and records the edit in PTLOG_HISTORIK in the same transaction
+    private int updateWithHistory(String field, String projekt, String testnamn, String value) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // ANALYS may be stored compressed, see AnalysCompression
+                boolean analys = "ANALYS".equals(field);
+                String columns = analys ? "ANALYS, " + AnalysCompression.COLUMN : field;
+                int updated = 0;
+                for (String table : TEST_TABLES) {
+                    Map<Long, String> previous = new LinkedHashMap<>();
+                    try (PreparedStatement select = conn.prepareStatement(
+                            "SELECT ID, " + columns + " FROM " + table + " WHERE PROJEKT = ? AND TESTNAMN = ? FOR UPDATE")) {
+                        select.setString(1, projekt);
+                        select.setString(2, testnamn);
+                        try (ResultSet rs = select.executeQuery()) {
+                            while (rs.next()) {
+                                previous.put(rs.getLong("ID"), analys ? AnalysCompression.read(rs) : rs.getString(field));
+                            }
+                        }
+                    }
+                    String updateSql = analys
+                            ? "UPDATE " + table + " SET ANALYS = ?, " + AnalysCompression.COLUMN + " = ? WHERE ID = ?"
+                            : "UPDATE " + table + " SET " + field + " = ? WHERE ID = ?";
+                    int idIndex = analys ? 3 : 2;
+                    try (PreparedStatement update = conn.prepareStatement(updateSql)) {
+                        for (Map.Entry<Long, String> row : previous.entrySet()) {
+                            if (analys) {
+                                analysCompression.bind(update, 1, 2, value);
+                            } else {
+                                update.setString(1, value);
+                            }
+                            update.setLong(idIndex, row.getKey());
+                            update.executeUpdate();
+                            editHistory.record(conn, row.getKey(), projekt, field, row.getValue(), value);
+                        }
+                    }
+                    updated += previous.size();
+                }
+                conn.commit();
+                return updated;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    @CrossOrigin(origins = "*")
+    @GetMapping("/getHistory")
+    public ResponseEntity<?> getHistory(@RequestParam String projekt, @RequestParam String testnamn,
+                                        @RequestParam(defaultValue = "ANALYS") String falt) {
+        String field = falt.toUpperCase();
+        if (!EditHistory.FIELDS.contains(field)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("falt must be one of " + EditHistory.FIELDS);
+        }
+        try {
+            return ResponseEntity.ok(editHistory.versions(projekt, testnamn, field));
+        } catch (SQLException e) {
+            logger.error("Failed to read history: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
+
+    @CrossOrigin(origins = "*")
+    @GetMapping(value = "/getHistoryVersion", produces = "text/plain;charset=UTF-8")
+    public ResponseEntity<String> getHistoryVersion(@RequestParam String projekt, @RequestParam String testnamn,
+                                                    @RequestParam(defaultValue = "ANALYS") String falt,
+                                                    @RequestParam int version,
+                                                    @RequestParam(required = false) Long id) {
+        String field = falt.toUpperCase();
+        if (!EditHistory.FIELDS.contains(field)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("falt must be one of " + EditHistory.FIELDS);
+        }
+        try {
+            String text = editHistory.version(projekt, testnamn, field, version, id);
+            if (text == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body("No version " + version + " of " + field + " for Projekt: " + projekt +
+                                " and Testnamn: " + testnamn);
+            }
+            return ResponseEntity.ok(text);
+        } catch (SQLException e) {
+            logger.error("Failed to rebuild history version: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
+
+    // Streams the request body through the parser, the file itself is never buffered or stored.
+    // Form-encoded bodies are refused, the servlet container would read them as request parameters.
+    @CrossOrigin(origins = "*")
+    @PostMapping(value = "/uploadResultat", consumes = "!" + MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<?> uploadResultat(@RequestParam String projekt, @RequestParam String testnamn,
+                                            @RequestParam(required = false) Long id,
+                                            @RequestParam(required = false) String filnamn,
+                                            HttpServletRequest request) {
+        try {
+            Long ptlogId = resultStore.testId(projekt, testnamn, id);
+            if (ptlogId == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body("No test found with Projekt: " + projekt + " and Testnamn: " + testnamn);
+            }
+            Map<String, Object> summary = resultStore.upload(ptlogId, projekt, filnamn, request.getInputStream());
+            if (summary == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body("Test " + testnamn + " in project " + projekt + " was deleted during the upload");
+            }
+            return ResponseEntity.ok(summary);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid result file: " + e.getMessage());
+        } catch (IOException e) {
+            logger.warn("Failed to read uploaded result: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Failed to read upload: " + e.getMessage());
+        } catch (SQLException e) {
+            logger.error("Failed to store result: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
+
+    @CrossOrigin(origins = "*")
+    @GetMapping("/getResultat")
+    public ResponseEntity<?> getResultat(@RequestParam String projekt, @RequestParam String testnamn) {
+        try {
+            return ResponseEntity.ok(resultStore.results(projekt, testnamn));
+        } catch (SQLException e) {
+            logger.error("Failed to read results: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
+
+    @CrossOrigin(origins = "*")
+    @GetMapping("/getResultatPercentiler")
+    public ResponseEntity<?> getResultatPercentiler(@RequestParam long resultatId,
+                                                    @RequestParam(required = false) String transaktion,
+                                                    @RequestParam(defaultValue = "50,90,95,99,99.9") String percentiler) {
+        double[] percentiles;
+        try {
+            percentiles = Arrays.stream(percentiler.split(","))
+                    .map(String::trim)
+                    .mapToDouble(Double::parseDouble)
+                    .toArray();
+        } catch (NumberFormatException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid percentiler: " + percentiler);
+        }
+        for (double percentile : percentiles) {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body("Percentiles must be between 0 and 100: " + percentiler);
+            }
+        }
+        try {
+            Map<String, Object> result = resultStore.percentiles(resultatId, transaktion, percentiles);
+            if (result == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body("No result " + resultatId + (transaktion != null ? " with transaction " + transaktion : ""));
+            }
+            return ResponseEntity.ok(result);
+        } catch (SQLException e) {
+            logger.error("Failed to read result percentiles: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
+
+    @CrossOrigin(origins = "*")
+    @GetMapping("/getResultatTidsserie")
+    public ResponseEntity<?> getResultatTidsserie(@RequestParam long resultatId,
+                                                  @RequestParam(required = false) String transaktion) {
+        try {
+            Map<String, Object> result = resultStore.timeline(resultatId, transaktion);
+            if (result == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body("No result " + resultatId + (transaktion != null ? " with transaction " + transaktion : ""));
+            }
+            return ResponseEntity.ok(result);
+        } catch (SQLException e) {
+            logger.error("Failed to read result time series: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
+
+    @CrossOrigin(origins = "*", methods = {RequestMethod.DELETE, RequestMethod.OPTIONS})
+    @DeleteMapping("/deleteResultat")
+    public ResponseEntity<String> deleteResultat(@RequestParam long resultatId) {
+        try {
+            if (resultStore.delete(resultatId) == 0) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No result " + resultatId);
+            }
+            logger.info("Deleted result: {}", resultatId);
+            return ResponseEntity.ok("Deleted result " + resultatId);
+        } catch (SQLException e) {
+            logger.error("Failed to delete result: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
+
     @CrossOrigin(origins = "*", methods = {RequestMethod.DELETE, RequestMethod.OPTIONS})
     @DeleteMapping("/deleteTest")
     public ResponseEntity<String> deleteTest(@RequestBody String json) {
@@ -681,17 +1161,32 @@ public class PtLog {
                     .body("Missing required field: " + e.getMessage());
         }
 
-        String sql = "DELETE FROM PTLOG WHERE PROJEKT = ? AND TESTNAMN = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, projekt);
-            stmt.setString(2, testnamn);
-
-            int rows = stmt.executeUpdate();
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            int rows = 0;
+            try {
+                editHistory.deleteForTest(conn, projekt, testnamn);
+                resultStore.deleteForTest(conn, projekt, testnamn);
+                for (String table : TEST_TABLES) {
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "DELETE FROM " + table + " WHERE PROJEKT = ? AND TESTNAMN = ?")) {
+                        stmt.setString(1, projekt);
+                        stmt.setString(2, testnamn);
+                        rows += stmt.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
             if (rows == 0) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body("No test found with Projekt: " + projekt + " and Testnamn: " + testnamn);
             }
+            projectChanged(projekt);
             logger.info("Deleted test: {} from project: {}", testnamn, projekt);
             return ResponseEntity.ok("Deleted " + rows + " test(s)");
         } catch (SQLException e) {
@@ -704,10 +1199,11 @@ public class PtLog {
     // ✅ Pool monitoring endpoint
     @CrossOrigin(origins = "*")
     @GetMapping("/dbpool")
-    public Map<String, Object> dbPoolStats() {
+    public Map<String, Object> dbPoolStats() throws SQLException {
         Map<String, Object> stats = new LinkedHashMap<>();
-        if (dataSource instanceof HikariDataSource) {
-            HikariDataSource hikari = (HikariDataSource) dataSource;
+        // The pools are wrapped by the SQL tracer
+        if (dataSource.isWrapperFor(HikariDataSource.class)) {
+            HikariDataSource hikari = dataSource.unwrap(HikariDataSource.class);
             stats.put("active", hikari.getHikariPoolMXBean().getActiveConnections());
             stats.put("idle", hikari.getHikariPoolMXBean().getIdleConnections());
             stats.put("waiting", hikari.getHikariPoolMXBean().getThreadsAwaitingConnection());
@@ -716,15 +1212,103 @@ public class PtLog {
         } else {
             stats.put("error", "Not a HikariDataSource");
         }
+        // Per-pool statistics with wait times and the advisor's recommended size
+        stats.put("autoApply", poolSizingAdvisor.isAutoApply());
+        stats.put("pools", poolSizingAdvisor.report());
         return stats;
     }
 
+    @CrossOrigin(origins = "*")
+    @PostMapping("/dbpool/resize")
+    public ResponseEntity<String> resizePool(@RequestParam String pool, @RequestParam int size) {
+        if (!poolSizingAdvisor.resize(pool, size)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Unknown pool or invalid size (1-" + poolSizingAdvisor.getMaxSize() + "): " + pool + " / " + size);
+        }
+        return ResponseEntity.ok("Resized pool " + pool + " to " + size + " connections");
+    }
+
+    // Slow statements recorded by the SQL tracer, newest first
+    @CrossOrigin(origins = "*")
+    @GetMapping("/sqltrace")
+    public Map<String, Object> sqlTrace() {
+        return sqlTracer.report();
+    }
+
+    @CrossOrigin(origins = "*")
+    @PostMapping("/sqltrace")
+    public ResponseEntity<String> configureSqlTrace(@RequestParam(required = false) Boolean enabled,
+                                                    @RequestParam(required = false) Long slowThresholdMs,
+                                                    @RequestParam(defaultValue = "false") boolean clear) {
+        if (slowThresholdMs != null) {
+            if (slowThresholdMs < 0) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body("slowThresholdMs must be zero or more: " + slowThresholdMs);
+            }
+            sqlTracer.setThresholdMs(slowThresholdMs);
+        }
+        if (enabled != null) {
+            sqlTracer.setEnabled(enabled);
+        }
+        if (clear) {
+            sqlTracer.clear();
+        }
+        return ResponseEntity.ok("SQL tracing " + (sqlTracer.isEnabled() ? "enabled" : "disabled") +
+                ", slow threshold " + sqlTracer.getThresholdMs() + " ms");
+    }
+
+    // H2 file size, fill rate and cache figures with the last backup and compaction
+    @CrossOrigin(origins = "*")
+    @GetMapping("/dbstorage")
+    public ResponseEntity<?> dbStorage() {
+        if (!h2Maintenance.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Storage statistics are only available for H2");
+        }
+        try {
+            return ResponseEntity.ok(h2Maintenance.status());
+        } catch (SQLException | IOException e) {
+            logger.error("Failed to read H2 storage statistics: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
+
+    @CrossOrigin(origins = "*")
+    @PostMapping("/dbstorage/backup")
+    public ResponseEntity<?> dbStorageBackup() {
+        if (!h2Maintenance.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Backups are only available for H2");
+        }
+        try {
+            return ResponseEntity.ok(h2Maintenance.backup());
+        } catch (SQLException | IOException e) {
+            logger.error("H2 backup failed: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
+
+    @CrossOrigin(origins = "*")
+    @PostMapping("/dbstorage/compact")
+    public ResponseEntity<?> dbStorageCompact(@RequestParam(defaultValue = "true") boolean force) {
+        if (!h2Maintenance.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Compaction is only available for H2");
+        }
+        try {
+            return ResponseEntity.ok(h2Maintenance.compact(force));
+        } catch (SQLException e) {
+            logger.error("H2 compaction failed: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Database error: " + e.getMessage());
+        }
+    }
+
     @CrossOrigin(origins = "*")
     @GetMapping("/dbinfo")
     public ResponseEntity<Map<String, Object>> getDatabaseInfo() {
         Map<String, Object> info = new LinkedHashMap<>();
 
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = metaDataSource.getConnection()) {
             DatabaseMetaData metaData = conn.getMetaData();
 
             // Basic database information
@@ -780,18 +1364,13 @@ public class PtLog {
                     .body("Missing required field: " + e.getMessage());
         }
 
-        String sql = "UPDATE PTLOG SET SYFTE = ? WHERE PROJEKT = ? AND TESTNAMN = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, syfte);
-            stmt.setString(2, projekt);
-            stmt.setString(3, testnamn);
-
-            int rows = stmt.executeUpdate();
+        try {
+            int rows = updateWithHistory("SYFTE", projekt, testnamn, syfte);
             if (rows == 0) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body("No row found with Projekt: " + projekt + " and Testnamn: " + testnamn);
             }
+            projectChanged(projekt);
             logger.info("Updated purpose for test: {} in project: {}", testnamn, projekt);
             return ResponseEntity.ok("Updated " + rows + " row(s)");
         } catch (SQLException e) {
@@ -824,18 +1403,22 @@ public class PtLog {
                     .body("Missing required fields: " + e.getMessage());
         }
 
-        String sql = "UPDATE PTLOG SET MARKERA = ? WHERE PROJEKT = ? AND TESTNAMN = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, markera);
-            stmt.setString(2, projekt);
-            stmt.setString(3, testnamn);
-
-            int rows = stmt.executeUpdate();
+        try (Connection conn = dataSource.getConnection()) {
+            int rows = 0;
+            for (String table : TEST_TABLES) {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE " + table + " SET MARKERA = ? WHERE PROJEKT = ? AND TESTNAMN = ?")) {
+                    stmt.setInt(1, markera);
+                    stmt.setString(2, projekt);
+                    stmt.setString(3, testnamn);
+                    rows += stmt.executeUpdate();
+                }
+            }
             if (rows == 0) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body("No row found with Projekt: " + projekt + " and Testnamn: " + testnamn);
             }
+            projectChanged(projekt);
             logger.info("Updated markera to {} for test: {} in project: {}", markera, testnamn, projekt);
             return ResponseEntity.ok("Updated " + rows + " row(s)");
         } catch (SQLException e) {
@@ -845,6 +1428,15 @@ public class PtLog {
         }
     }
 
+    // Called after every committed write: stop new readers from joining queries that may predate it,
+    // then publish the change to the read model
+    private void projectChanged(String projekt) {
+        dataFlights.forget(projekt);
+        projectInfoFlights.forget(projekt);
+        projectListFlights.forgetAll();
+        changeLog.projectChanged(projekt);
+    }
+
     // Helper method to mask passwords in connection URLs
     private String maskPassword(String url) {
         if (url == null) return null;
@@ -0,0 +1,179 @@
+package se.ptlog.compression;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Storage of ANALYS texts of PTLOG and PTLOG_ARKIV. Texts of at least threshold characters are stored Deflate
+ * compressed in ANALYS_KOMPRIMERAD (with the codec marker of DeflateCodec) and ANALYS is left NULL, so a long
+ * analysis with pasted logs or tables moves a fraction of its size between database and application and no
+ * longer takes up a CLOB. Shorter texts stay in ANALYS. Reads decode either column whether or not compression
+ * is enabled, so it can be switched off at any time; while enabled, existing rows are migrated in the background.
+ */
+@Component
+public class AnalysCompression {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysCompression.class);
+
+    public static final String COLUMN = "ANALYS_KOMPRIMERAD";
+
+    private static final List<String> TABLES = List.of("PTLOG", "PTLOG_ARKIV");
+
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final int threshold;
+    private final int batchSize;
+
+    // Tables with no uncompressed long texts left. Texts written while enabled are compressed on write, so a table
+    // stays done until the next start.
+    private final Set<String> migrated = ConcurrentHashMap.newKeySet();
+
+    public AnalysCompression(DataSource dataSource,
+                             @Value("${analys.compression.enabled:false}") boolean enabled,
+                             @Value("${analys.compression.threshold:4096}") int threshold,
+                             @Value("${analys.compression.migrate-batch-size:200}") int batchSize) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.threshold = Math.max(1, threshold);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    // Binds a text to the ANALYS and ANALYS_KOMPRIMERAD parameters of an INSERT or UPDATE
+    public void bind(PreparedStatement st, int analysIndex, int compressedIndex, String text) throws SQLException {
+        if (enabled && text != null && text.length() >= threshold) {
+            st.setNull(analysIndex, Types.CLOB);
+            st.setBytes(compressedIndex, DeflateCodec.encode(text.getBytes(StandardCharsets.UTF_8)));
+        } else {
+            st.setString(analysIndex, text);
+            st.setNull(compressedIndex, Types.BLOB);
+        }
+    }
+
+    // The text of a row selected with both ANALYS and ANALYS_KOMPRIMERAD
+    public static String read(ResultSet rs) throws SQLException {
+        byte[] compressed = rs.getBytes(COLUMN);
+        return compressed != null ? decode(compressed) : rs.getString("ANALYS");
+    }
+
+    /**
+     * Adds one column of a result row to a JSON row. ANALYS_KOMPRIMERAD must follow ANALYS in the select list:
+     * a stored value replaces ANALYS in place and the column itself never reaches the response.
+     */
+    public static void putColumn(Map<String, Object> row, ResultSet rs, int column, String name) throws SQLException {
+        if (COLUMN.equals(name)) {
+            byte[] compressed = rs.getBytes(column);
+            if (compressed != null) {
+                row.put("ANALYS", decode(compressed));
+            }
+            return;
+        }
+        Object value = rs.getObject(column);
+        // Convert CLOB to String for JSON serialization (H2 compatibility)
+        if (value instanceof Clob clob) {
+            value = clob.getSubString(1, (int) clob.length());
+        }
+        row.put(name, value);
+    }
+
+    private static String decode(byte[] compressed) throws SQLException {
+        try {
+            return new String(DeflateCodec.decode(compressed), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Unreadable " + COLUMN + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compresses rows written before compression was enabled, one batch per table and run. Each row is locked
+     * and re-read before it is rewritten, so an /updateAnalys running at the same time is never overwritten.
+     * The search for such rows can't use an index, so it stops for a table once a run finds none. A run that finds
+     * rows but compresses none of them (all shortened or rewritten meanwhile) does not count, the next run looks again.
+     */
+    @Scheduled(fixedDelayString = "${analys.compression.migrate-interval-ms:60000}",
+            initialDelayString = "${analys.compression.migrate-interval-ms:60000}")
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        for (String table : TABLES) {
+            if (migrated.contains(table)) {
+                continue;
+            }
+            try {
+                int rows = migrateBatch(table);
+                if (rows < 0) {
+                    migrated.add(table);
+                    logger.info("All long ANALYS texts in {} are compressed", table);
+                } else if (rows > 0) {
+                    logger.info("Compressed ANALYS of {} row(s) in {}", rows, table);
+                }
+            } catch (SQLException e) {
+                logger.error("Failed to compress ANALYS in {}: {}", table, e.getMessage());
+            }
+        }
+    }
+
+    // Number of rows compressed, -1 when no uncompressed long text was found
+    int migrateBatch(String table) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            List<Long> ids = new ArrayList<>();
+            try (PreparedStatement st = conn.prepareStatement("SELECT ID FROM " + table +
+                    " WHERE " + COLUMN + " IS NULL AND LENGTH(ANALYS) >= ? FETCH FIRST ? ROWS ONLY")) {
+                st.setInt(1, threshold);
+                st.setInt(2, batchSize);
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong("ID"));
+                    }
+                }
+            }
+            if (ids.isEmpty()) {
+                return -1;
+            }
+
+            conn.setAutoCommit(false);
+            int migrated = 0;
+            try (PreparedStatement select = conn.prepareStatement("SELECT ANALYS FROM " + table +
+                         " WHERE ID = ? AND " + COLUMN + " IS NULL FOR UPDATE");
+                 PreparedStatement update = conn.prepareStatement("UPDATE " + table +
+                         " SET ANALYS = ?, " + COLUMN + " = ? WHERE ID = ?")) {
+                for (long id : ids) {
+                    select.setLong(1, id);
+                    String text;
+                    try (ResultSet rs = select.executeQuery()) {
+                        if (!rs.next()) {
+                            continue;
+                        }
+                        text = rs.getString("ANALYS");
+                    }
+                    // Shortened by an edit since the IDs were selected
+                    if (text == null || text.length() < threshold) {
+                        continue;
+                    }
+                    bind(update, 1, 2, text);
+                    update.setLong(3, id);
+                    migrated += update.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            return migrated;
+        }
+    }
+}
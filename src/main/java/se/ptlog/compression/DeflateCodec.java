@@ -0,0 +1,73 @@
+package se.ptlog.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Byte format of everything the application stores compressed: edit history entries, compressed ANALYS texts and
+ * load test histograms and throughput series. The first byte is a codec marker, the rest is either the payload as
+ * it is or raw Deflate, whichever is smaller. The markers are in the stored data, so they must never change.
+ */
+public final class DeflateCodec {
+
+    public static final byte RAW = 0;
+    public static final byte DEFLATE = 1;
+
+    private DeflateCodec() {
+    }
+
+    public static byte[] encode(byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + 16);
+            out.write(DEFLATE);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished() && out.size() <= payload.length) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            if (deflater.finished() && out.size() <= payload.length) {
+                return out.toByteArray();
+            }
+        } finally {
+            deflater.end();
+        }
+        // Short payloads do not compress, store them as they are
+        byte[] raw = new byte[payload.length + 1];
+        raw[0] = RAW;
+        System.arraycopy(payload, 0, raw, 1, payload.length);
+        return raw;
+    }
+
+    public static byte[] decode(byte[] stored) {
+        if (stored[0] == RAW) {
+            byte[] payload = new byte[stored.length - 1];
+            System.arraycopy(stored, 1, payload, 0, payload.length);
+            return payload;
+        }
+        if (stored[0] != DEFLATE) {
+            throw new IllegalArgumentException("Unknown codec " + stored[0]);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(stored, 1, stored.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed data");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed data: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -7,13 +7,21 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import se.ptlog.compression.AnalysCompression;
+import se.ptlog.purge.ProjectPurge;
+import se.ptlog.trace.SqlTracer;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
 
 @Configuration
 public class DatabaseConfig {
@@ -59,8 +67,116 @@ public class DatabaseConfig {
     @Value("${spring.datasource.hikari.connection-timeout:30000}")
     private long connectionTimeout;
 
+    // Read pool (0 = reads share the main pool), optionally against a read replica
+    @Value("${db.pool.read.maximum-pool-size:0}")
+    private int readPoolSize;
+
+    @Value("${db.pool.read.url:}")
+    private String readUrl;
+
+    // Small pool for health checks and metadata so they never queue behind heavy reads
+    @Value("${db.pool.meta.maximum-pool-size:2}")
+    private int metaPoolSize;
+
+    // Driver tuning, see oracleDriverProperties and h2UrlSettings
+    @Value("${db.oracle.statement-cache-size:100}")
+    private int oracleStatementCacheSize;
+
+    @Value("${db.oracle.row-prefetch:100}")
+    private int oracleRowPrefetch;
+
+    @Value("${db.oracle.lob-prefetch-size:32768}")
+    private int oracleLobPrefetchSize;
+
+    @Value("${db.h2.query-cache-size:64}")
+    private int h2QueryCacheSize;
+
+    @Value("${db.h2.inplace-lob-length:4096}")
+    private int h2InplaceLobLength;
+
+    // H2's own MAX_LENGTH_INPLACE_LOB, used in auto-server mode
+    private static final int H2_DEFAULT_INPLACE_LOB_LENGTH = 256;
+
+    // H2 storage engine, see H2Maintenance for the server mode, backups and compaction
+    @Value("${db.h2.mode:embedded}")
+    private String h2Mode;
+
+    @Value("${db.h2.cache-size-kb:32768}")
+    private int h2CacheSizeKb;
+
+    @Value("${db.h2.max-compact-time-ms:2000}")
+    private int h2MaxCompactTimeMs;
+
+    // Pool sizing advisor
+    @Value("${db.pool.advisor.auto-apply:false}")
+    private boolean advisorAutoApply;
+
+    @Value("${db.pool.advisor.min-size:2}")
+    private int advisorMinSize;
+
+    @Value("${db.pool.advisor.max-size:50}")
+    private int advisorMaxSize;
+
+    @Value("${db.pool.advisor.target-wait-ms:5}")
+    private double advisorTargetWaitMs;
+
+    @Bean
+    public PoolSizingAdvisor poolSizingAdvisor() {
+        return new PoolSizingAdvisor(advisorAutoApply, advisorMinSize, advisorMaxSize, advisorTargetWaitMs);
+    }
+
+    // Main pool, used for writes and background jobs
+    @Bean
+    @Primary
+    public DataSource dataSource(PoolSizingAdvisor advisor, SqlTracer sqlTracer) {
+        HikariConfig config = createPoolConfig("ptlog-main", maxPoolSize, minIdle, advisor);
+        HikariDataSource dataSource = new HikariDataSource(config);
+        advisor.register(dataSource);
+
+        // Initialize schema if needed
+        if ("h2".equalsIgnoreCase(dbType) && h2AutoInit) {
+            initializeH2Schema(dataSource);
+        } else if ("oracle".equalsIgnoreCase(dbType) && oracleAutoInit) {
+            initializeOracleSchema(dataSource);
+        }
+        // The code reads these columns whatever the auto init setting, so they are always checked
+        initializeSupplementaryColumns(dataSource);
+
+        return sqlTracer.wrap(dataSource, "ptlog-main");
+    }
+
     @Bean
-    public DataSource dataSource() {
+    public DataSource readDataSource(DataSource dataSource, PoolSizingAdvisor advisor, SqlTracer sqlTracer) {
+        if (readPoolSize <= 0) {
+            logger.info("No read pool configured, reads share the main pool");
+            return dataSource;
+        }
+
+        HikariConfig config = createPoolConfig("ptlog-read", readPoolSize, Math.min(minIdle, readPoolSize), advisor);
+        if (!readUrl.isBlank()) {
+            // Read replica, may lag slightly behind the primary
+            config.setJdbcUrl(readUrl);
+            logger.info("✅ Read pool points at replica: {}", readUrl.replaceAll("(/|:)[^/@:]+(@)", "$1****$2"));
+        }
+        config.setReadOnly(true);
+
+        HikariDataSource readDataSource = new HikariDataSource(config);
+        advisor.register(readDataSource);
+        return sqlTracer.wrap(readDataSource, "ptlog-read");
+    }
+
+    @Bean
+    public DataSource metaDataSource(PoolSizingAdvisor advisor, SqlTracer sqlTracer) {
+        HikariConfig config = createPoolConfig("ptlog-meta", metaPoolSize, 1, advisor);
+        // Fail fast, a health check stuck for 30 seconds is worse than a quick error
+        config.setConnectionTimeout(Math.min(connectionTimeout, 5000));
+
+        HikariDataSource metaDataSource = new HikariDataSource(config);
+        advisor.register(metaDataSource);
+        return sqlTracer.wrap(metaDataSource, "ptlog-meta");
+    }
+
+    private HikariConfig createPoolConfig(String poolName, int poolSize, int poolMinIdle, PoolSizingAdvisor advisor) {
         HikariConfig config = new HikariConfig();
 
         if ("h2".equalsIgnoreCase(dbType)) {
@@ -70,38 +186,71 @@ public class DatabaseConfig {
         }
 
         // Common HikariCP settings
-        config.setMaximumPoolSize(maxPoolSize);
-        config.setMinimumIdle(minIdle);
+        config.setPoolName(poolName);
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(poolMinIdle);
         config.setConnectionTimeout(connectionTimeout);
         config.setIdleTimeout(600000);
         config.setMaxLifetime(1800000);
+        config.setMetricsTrackerFactory(advisor);
 
-        // Performance optimizations
-        config.addDataSourceProperty("cachePrepStmts", "true");
-        config.addDataSourceProperty("prepStmtCacheSize", "250");
-        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        return config;
+    }
 
-        HikariDataSource dataSource = new HikariDataSource(config);
+    /**
+     * Connection properties for ojdbc: the implicit statement cache keeps parsed cursors per connection, so the
+     * prepareStatement/close pattern in PtLog reuses them instead of reparsing, the row prefetch replaces the
+     * 10 rows per round trip default, and the LOB prefetch returns small ANALYS CLOBs inline with the row.
+     */
+    public static Properties oracleDriverProperties(int statementCacheSize, int rowPrefetch, int lobPrefetchSize) {
+        Properties properties = new Properties();
+        properties.setProperty("oracle.jdbc.implicitStatementCacheSize", String.valueOf(statementCacheSize));
+        properties.setProperty("defaultRowPrefetch", String.valueOf(rowPrefetch));
+        properties.setProperty("oracle.jdbc.defaultLobPrefetchSize", String.valueOf(lobPrefetchSize));
+        return properties;
+    }
 
-        // Initialize schema if needed
-        if ("h2".equalsIgnoreCase(dbType) && h2AutoInit) {
-            initializeH2Schema(dataSource);
-        } else if ("oracle".equalsIgnoreCase(dbType) && oracleAutoInit) {
-            initializeOracleSchema(dataSource);
-        }
+    /**
+     * URL settings for H2: the per-session parsed statement cache (QUERY_CACHE_SIZE, default 8) is smaller than the
+     * number of distinct statements PtLog issues, and CLOBs up to MAX_LENGTH_INPLACE_LOB (default 256) are stored
+     * in the row instead of the LOB store, so typical ANALYS texts are read with the row rather than one extra
+     * lookup each. The LOB setting only applies to values written after it is raised, and is kept in the database
+     * file once set.
+     */
+    public static String h2UrlSettings(int queryCacheSize, int inplaceLobLength) {
+        return ";QUERY_CACHE_SIZE=" + queryCacheSize + ";MAX_LENGTH_INPLACE_LOB=" + inplaceLobLength;
+    }
 
-        return dataSource;
+    /**
+     * MVStore settings for H2: the page cache (CACHE_SIZE in KB, H2 default 16 MB) and how long the store may
+     * spend compacting when the database is closed (MAX_COMPACT_TIME, default 200 ms). A longer close-time
+     * compaction hands the next start a smaller file, which is what makes restarts fast.
+     */
+    public static String h2StoreSettings(int cacheSizeKb, int maxCompactTimeMs) {
+        return ";CACHE_SIZE=" + cacheSizeKb + ";MAX_COMPACT_TIME=" + maxCompactTimeMs;
     }
 
     private void configureH2(HikariConfig config) {
-        String url = "jdbc:h2:file:" + h2FilePath + ";MODE=Oracle;AUTO_SERVER=TRUE;DB_CLOSE_DELAY=-1";
+        if (!List.of("embedded", "server", "auto-server").contains(h2Mode.toLowerCase())) {
+            throw new IllegalStateException("Unknown db.h2.mode '" + h2Mode + "', use embedded, server or auto-server");
+        }
+        // auto-server lets a second process open the same file over TCP, at the cost of a server thread and
+        // lock file polling even when this is the only process; embedded and server keep the file to ourselves
+        String serverSetting = "auto-server".equalsIgnoreCase(h2Mode) ? ";AUTO_SERVER=TRUE" : "";
+        // The second auto-server process reads over TCP, where H2 decodes inline CLOBs slower than it fetches them
+        // from the LOB store (/getData went from ~67 ms to ~120 ms), so that mode writes with H2's default again
+        int inplaceLobLength = "auto-server".equalsIgnoreCase(h2Mode)
+                ? H2_DEFAULT_INPLACE_LOB_LENGTH : h2InplaceLobLength;
+        String url = "jdbc:h2:file:" + h2FilePath + ";MODE=Oracle" + serverSetting + ";DB_CLOSE_DELAY=-1"
+                + h2UrlSettings(h2QueryCacheSize, inplaceLobLength)
+                + h2StoreSettings(h2CacheSizeKb, h2MaxCompactTimeMs);
 
         config.setJdbcUrl(url);
         config.setUsername(h2Username);
         config.setPassword(h2Password);
         config.setDriverClassName("org.h2.Driver");
 
-        logger.info("✅ Configured H2 file database at: {}", h2FilePath);
+        logger.info("✅ Configured H2 file database at: {} ({} mode, {} KB cache)", h2FilePath, h2Mode, h2CacheSizeKb);
     }
 
     private void configureOracle(HikariConfig config) {
@@ -109,6 +258,8 @@ public class DatabaseConfig {
         config.setUsername(oracleUsername);
         config.setPassword(oraclePassword);
         config.setDriverClassName("oracle.jdbc.OracleDriver");
+        config.setDataSourceProperties(
+                oracleDriverProperties(oracleStatementCacheSize, oracleRowPrefetch, oracleLobPrefetchSize));
 
         logger.info("✅ Configured Oracle database");
     }
@@ -117,16 +268,22 @@ public class DatabaseConfig {
         try (Connection conn = dataSource.getConnection()) {
             if (schemaExists(conn, "H2")) {
                 logger.info("H2 schema already exists, skipping initialization");
-                return;
-            }
+            } else {
+                logger.info("Initializing H2 database schema...");
 
-            logger.info("Initializing H2 database schema...");
+                ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+                populator.addScript(new ClassPathResource("schema-h2.sql"));
+                populator.execute(dataSource);
 
-            ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
-            populator.addScript(new ClassPathResource("schema-h2.sql"));
-            populator.execute(dataSource);
+                logger.info("✅ H2 schema initialized successfully");
+            }
 
-            logger.info("✅ H2 schema initialized successfully");
+            initializeSupplementaryTable(dataSource, conn, "H2", "PTLOG_ARKIV", "schema-h2-arkiv.sql");
+            initializeSupplementaryTable(dataSource, conn, "H2", "PTLOG_VERSION", "schema-h2-version.sql");
+            initializeSupplementaryTable(dataSource, conn, "H2", "PTLOG_HISTORIK", "schema-h2-historik.sql");
+            initializeSupplementaryTable(dataSource, conn, "H2", "PTLOG_IDEMPOTENCY", "schema-h2-idempotency.sql");
+            initializeSupplementaryTable(dataSource, conn, "H2", "PTLOG_RESULTAT", "schema-h2-resultat.sql");
+            initializeSupplementaryTable(dataSource, conn, "H2", "PTLOG_RADERING", "schema-h2-radering.sql");
         } catch (Exception e) {
             logger.error("Failed to initialize H2 schema: {}", e.getMessage(), e);
         }
@@ -136,43 +293,102 @@ public class DatabaseConfig {
         try (Connection conn = dataSource.getConnection()) {
             if (schemaExists(conn, "Oracle")) {
                 logger.info("Oracle schema already exists, skipping initialization");
-                return;
-            }
+            } else {
+                logger.info("Initializing Oracle database schema...");
 
-            logger.info("Initializing Oracle database schema...");
+                ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+                populator.addScript(new ClassPathResource("schema-oracle.sql"));
+                populator.execute(dataSource);
 
-            ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
-            populator.addScript(new ClassPathResource("schema-oracle.sql"));
-            populator.execute(dataSource);
+                logger.info("✅ Oracle schema initialized successfully");
+            }
 
-            logger.info("✅ Oracle schema initialized successfully");
+            initializeSupplementaryTable(dataSource, conn, "Oracle", "PTLOG_ARKIV", "schema-oracle-arkiv.sql");
+            initializeSupplementaryTable(dataSource, conn, "Oracle", "PTLOG_VERSION", "schema-oracle-version.sql");
+            initializeSupplementaryTable(dataSource, conn, "Oracle", "PTLOG_HISTORIK", "schema-oracle-historik.sql");
+            initializeSupplementaryTable(dataSource, conn, "Oracle", "PTLOG_IDEMPOTENCY", "schema-oracle-idempotency.sql");
+            initializeSupplementaryTable(dataSource, conn, "Oracle", "PTLOG_RESULTAT", "schema-oracle-resultat.sql");
+            initializeSupplementaryTable(dataSource, conn, "Oracle", "PTLOG_RADERING", "schema-oracle-radering.sql");
         } catch (Exception e) {
             logger.error("Failed to initialize Oracle schema: {}", e.getMessage(), e);
         }
     }
 
-    private boolean schemaExists(Connection conn, String dbType) {
-        try (Statement stmt = conn.createStatement()) {
-            // Check if PTLOG_PROJEKT table exists
-            if ("H2".equals(dbType)) {
-                ResultSet rs = stmt.executeQuery(
-                        "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES " +
-                                "WHERE TABLE_NAME = 'PTLOG_PROJEKT'"
-                );
+    // Creates tables added after the initial schema, so existing databases are upgraded in place
+    private void initializeSupplementaryTable(DataSource dataSource, Connection conn, String dbType,
+                                              String tableName, String script) {
+        if (tableExists(conn, dbType, tableName)) {
+            return;
+        }
+
+        logger.info("Creating {} table from {}...", tableName, script);
+
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        populator.addScript(new ClassPathResource(script));
+        populator.execute(dataSource);
+
+        logger.info("✅ {} table created", tableName);
+    }
+
+    private void initializeSupplementaryColumns(DataSource dataSource) {
+        String type = "h2".equalsIgnoreCase(dbType) ? "H2" : "Oracle";
+        String flagType = "H2".equals(type) ? "INTEGER DEFAULT 0 NOT NULL" : "NUMBER(1) DEFAULT 0 NOT NULL";
+        try (Connection conn = dataSource.getConnection()) {
+            initializeSupplementaryColumn(conn, type, "PTLOG", AnalysCompression.COLUMN, "BLOB");
+            initializeSupplementaryColumn(conn, type, "PTLOG_ARKIV", AnalysCompression.COLUMN, "BLOB");
+            initializeSupplementaryColumn(conn, type, "PTLOG_PROJEKT", ProjectPurge.COLUMN, flagType);
+        } catch (Exception e) {
+            logger.error("Failed to add supplementary columns, run schema-{}-kolumner.sql manually: {}",
+                    type.toLowerCase(), e.getMessage(), e);
+        }
+    }
+
+    // Adds columns introduced after a table was created; tables not created yet get them from their own script
+    private void initializeSupplementaryColumn(Connection conn, String dbType, String tableName,
+                                               String columnName, String columnType) throws SQLException {
+        if (!tableExists(conn, dbType, tableName)) {
+            return;
+        }
+        String sql = "H2".equals(dbType)
+                ? "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = ? AND COLUMN_NAME = ?"
+                : "SELECT COUNT(*) FROM USER_TAB_COLUMNS WHERE TABLE_NAME = ? AND COLUMN_NAME = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, tableName);
+            stmt.setString(2, columnName);
+            try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next() && rs.getInt(1) > 0) {
-                    return true;
+                    return;
                 }
-            } else {
-                // Oracle
-                ResultSet rs = stmt.executeQuery(
-                        "SELECT COUNT(*) FROM USER_TABLES WHERE TABLE_NAME = 'PTLOG_PROJEKT'"
-                );
+            }
+        }
+
+        logger.info("Adding column {} to {}...", columnName, tableName);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("H2".equals(dbType)
+                    ? "ALTER TABLE " + tableName + " ADD COLUMN " + columnName + " " + columnType
+                    : "ALTER TABLE " + tableName + " ADD (" + columnName + " " + columnType + ")");
+        }
+        logger.info("✅ Column {}.{} added", tableName, columnName);
+    }
+
+    private boolean schemaExists(Connection conn, String dbType) {
+        // Check if PTLOG_PROJEKT table exists
+        return tableExists(conn, dbType, "PTLOG_PROJEKT");
+    }
+
+    private boolean tableExists(Connection conn, String dbType, String tableName) {
+        String sql = "H2".equals(dbType)
+                ? "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?"
+                : "SELECT COUNT(*) FROM USER_TABLES WHERE TABLE_NAME = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next() && rs.getInt(1) > 0) {
                     return true;
                 }
             }
         } catch (Exception e) {
-            logger.debug("Error checking if schema exists: {}", e.getMessage());
+            logger.debug("Error checking if table {} exists: {}", tableName, e.getMessage());
         }
         return false;
     }
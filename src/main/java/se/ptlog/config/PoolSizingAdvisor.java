@@ -0,0 +1,189 @@
+package se.ptlog.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records connection wait and usage times for every Hikari pool and recommends a maximum pool size per pool.
+ * The recommendation follows Little's law (connections in use = acquisitions/s x average hold time) plus headroom,
+ * grows the pool while callers wait longer than the target and shrinks it gradually.
+ * It is applied automatically when enabled, otherwise it is only reported through /dbpool.
+ */
+public class PoolSizingAdvisor implements MetricsTrackerFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoolSizingAdvisor.class);
+
+    private static final double HEADROOM = 1.5;
+    private static final int GROW_STEP = 2;
+
+    private final Map<String, PoolMetrics> metrics = new ConcurrentHashMap<>();
+    private final Map<String, HikariDataSource> pools = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Object>> lastWindow = new ConcurrentHashMap<>();
+
+    private final boolean autoApply;
+    private final int minSize;
+    private final int maxSize;
+    private final double targetWaitMs;
+
+    public PoolSizingAdvisor(boolean autoApply, int minSize, int maxSize, double targetWaitMs) {
+        this.autoApply = autoApply;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetWaitMs = targetWaitMs;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        PoolMetrics tracker = new PoolMetrics();
+        metrics.put(poolName, tracker);
+        return tracker;
+    }
+
+    public void register(HikariDataSource dataSource) {
+        pools.put(dataSource.getPoolName(), dataSource);
+    }
+
+    @Scheduled(fixedDelayString = "${db.pool.advisor.interval-ms:30000}",
+            initialDelayString = "${db.pool.advisor.interval-ms:30000}")
+    public void evaluate() {
+        for (Map.Entry<String, HikariDataSource> entry : pools.entrySet()) {
+            PoolMetrics tracker = metrics.get(entry.getKey());
+            if (tracker == null) {
+                continue;
+            }
+            HikariDataSource pool = entry.getValue();
+            Map<String, Object> window = tracker.drain();
+            int current = pool.getMaximumPoolSize();
+            int recommended = recommend(window, current);
+            window.put("recommendedPoolSize", recommended);
+            lastWindow.put(entry.getKey(), window);
+
+            if (autoApply && recommended != current) {
+                resize(entry.getKey(), recommended);
+            }
+        }
+    }
+
+    // Sizes above db.pool.advisor.max-size are refused, a pool must not outgrow what the database allows
+    public boolean resize(String poolName, int size) {
+        HikariDataSource pool = pools.get(poolName);
+        if (pool == null || size < 1 || size > maxSize) {
+            return false;
+        }
+        int previous = pool.getMaximumPoolSize();
+        if (pool.getMinimumIdle() > size) {
+            pool.getHikariConfigMXBean().setMinimumIdle(size);
+        }
+        pool.getHikariConfigMXBean().setMaximumPoolSize(size);
+        logger.info("Resized pool {} from {} to {} connections", poolName, previous, size);
+        return true;
+    }
+
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        for (Map.Entry<String, HikariDataSource> entry : pools.entrySet()) {
+            HikariDataSource pool = entry.getValue();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            if (pool.getHikariPoolMXBean() != null) {
+                stats.put("active", pool.getHikariPoolMXBean().getActiveConnections());
+                stats.put("idle", pool.getHikariPoolMXBean().getIdleConnections());
+                stats.put("waiting", pool.getHikariPoolMXBean().getThreadsAwaitingConnection());
+                stats.put("total", pool.getHikariPoolMXBean().getTotalConnections());
+            }
+            stats.put("maxPoolSize", pool.getMaximumPoolSize());
+            stats.put("lastWindow", lastWindow.getOrDefault(entry.getKey(), Map.of()));
+            report.put(entry.getKey(), stats);
+        }
+        return report;
+    }
+
+    public boolean isAutoApply() {
+        return autoApply;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private int recommend(Map<String, Object> window, int current) {
+        long acquisitions = (long) window.get("acquisitions");
+        if (acquisitions == 0) {
+            // No traffic, nothing to learn from
+            return current;
+        }
+
+        double seconds = (double) window.get("windowSeconds");
+        double avgUsageMs = (double) window.get("avgUsageMs");
+        double inUse = acquisitions / seconds * avgUsageMs / 1000.0;
+        int recommended = (int) Math.ceil(inUse * HEADROOM) + 1;
+
+        if ((double) window.get("avgWaitMs") > targetWaitMs || (long) window.get("timeouts") > 0) {
+            recommended = Math.max(recommended, current + GROW_STEP);
+        } else if (recommended < current) {
+            // Shrink one connection per window so a quiet period doesn't leave the next burst without connections
+            recommended = current - 1;
+        }
+        return Math.max(minSize, Math.min(maxSize, recommended));
+    }
+
+    // Lock-free counters fed by Hikari on every borrow and return, drained once per evaluation window
+    private static class PoolMetrics implements IMetricsTracker {
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder acquiredNanos = new LongAdder();
+        private final AtomicLong maxAcquiredNanos = new AtomicLong();
+        private final LongAdder usages = new LongAdder();
+        private final LongAdder usageMillis = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private volatile long windowStart = System.nanoTime();
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquisitions.increment();
+            acquiredNanos.add(elapsedAcquiredNanos);
+            maxAcquiredNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usages.increment();
+            usageMillis.add(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+
+        Map<String, Object> drain() {
+            long now = System.nanoTime();
+            double seconds = Math.max((now - windowStart) / 1_000_000_000.0, 0.001);
+            windowStart = now;
+
+            long acquired = acquisitions.sumThenReset();
+            long waitNanos = acquiredNanos.sumThenReset();
+            long maxWaitNanos = maxAcquiredNanos.getAndSet(0);
+            long used = usages.sumThenReset();
+            long usedMillis = usageMillis.sumThenReset();
+
+            Map<String, Object> window = new LinkedHashMap<>();
+            window.put("windowSeconds", seconds);
+            window.put("acquisitions", acquired);
+            window.put("avgWaitMs", acquired == 0 ? 0.0 : waitNanos / 1_000_000.0 / acquired);
+            window.put("maxWaitMs", maxWaitNanos / 1_000_000.0);
+            window.put("avgUsageMs", used == 0 ? 0.0 : (double) usedMillis / used);
+            window.put("timeouts", timeouts.sumThenReset());
+            return window;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package se.ptlog.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+@Configuration
+public class StartupConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupConfig.class);
+
+    // OpenAPI generation beans are only needed when someone opens the docs, so create them on first use.
+    // The swagger-ui beans and their properties stay eager since they register the UI's resource handlers at startup.
+    // With -Paot this runs during AOT processing and the lazy flags are compiled into the generated bean definitions,
+    // so startup.lazy-api-docs has to be set at build time for an AOT image.
+    @Bean
+    public static BeanFactoryPostProcessor lazyApiDocs(Environment environment) {
+        return beanFactory -> {
+            if (!environment.getProperty("startup.lazy-api-docs", Boolean.class, true)) {
+                return;
+            }
+
+            int lazyBeans = 0;
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                String className = definition.getBeanClassName();
+                // @Bean methods have no class name, use the declaring configuration class instead
+                if (className == null && definition.getFactoryBeanName() != null
+                        && beanFactory.containsBeanDefinition(definition.getFactoryBeanName())) {
+                    className = beanFactory.getBeanDefinition(definition.getFactoryBeanName()).getBeanClassName();
+                }
+                if (className != null && (className.startsWith("org.springdoc.core.configuration.SpringDocConfiguration")
+                        || className.startsWith("org.springdoc.webmvc.core."))) {
+                    definition.setLazyInit(true);
+                    lazyBeans++;
+                }
+            }
+            logger.debug("Marked {} springdoc beans for lazy initialization", lazyBeans);
+        };
+    }
+}
@@ -0,0 +1,320 @@
+package se.ptlog.h2;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.h2.engine.Session;
+import org.h2.engine.SessionLocal;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.tools.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.*;
+import java.sql.*;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Operations for the H2 file database: the optional in-process TCP server, scheduled online backups and
+ * compaction of the MVStore file, and file size and fill rate figures for /dbstorage.
+ * H2 reuses the space of deleted rows but never gives it back to the file system while the database is open,
+ * so after large deletes the file is compacted online once its live data falls below compact.fill-rate.
+ * Does nothing when db.type is not h2.
+ */
+@Component
+public class H2Maintenance {
+
+    private static final Logger logger = LoggerFactory.getLogger(H2Maintenance.class);
+
+    // UTC, so backup names sort by age whatever the time zone of the process
+    private static final DateTimeFormatter BACKUP_TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final DataSource dataSource;
+    private final DataSource metaDataSource;
+    private final boolean enabled;
+    private final String mode;
+    private final Path databaseFile;
+    private final int tcpPort;
+    private final boolean tcpAllowOthers;
+    private final Path backupDir;
+    private final String backupFormat;
+    private final int backupKeep;
+    private final int compactFillRate;
+    private final long compactMinFileSize;
+    private final int compactMaxTimeMs;
+
+    private Server tcpServer;
+    private volatile Map<String, Object> lastBackup;
+    private volatile Map<String, Object> lastCompaction;
+
+    public H2Maintenance(DataSource dataSource,
+                         @Qualifier("metaDataSource") DataSource metaDataSource,
+                         @Value("${db.type:oracle}") String dbType,
+                         @Value("${h2.file.path:./data/ptlog}") String h2FilePath,
+                         @Value("${db.h2.mode:embedded}") String mode,
+                         @Value("${db.h2.tcp-port:9092}") int tcpPort,
+                         @Value("${db.h2.tcp-allow-others:false}") boolean tcpAllowOthers,
+                         @Value("${db.h2.backup.dir:}") String backupDir,
+                         @Value("${db.h2.backup.format:backup}") String backupFormat,
+                         @Value("${db.h2.backup.keep:7}") int backupKeep,
+                         @Value("${db.h2.compact.fill-rate:60}") int compactFillRate,
+                         @Value("${db.h2.compact.min-file-size-mb:16}") long compactMinFileSizeMb,
+                         @Value("${db.h2.compact.max-time-ms:5000}") int compactMaxTimeMs) {
+        this.dataSource = dataSource;
+        this.metaDataSource = metaDataSource;
+        this.enabled = "h2".equalsIgnoreCase(dbType);
+        this.mode = mode.toLowerCase();
+        this.databaseFile = Path.of(h2FilePath + ".mv.db").toAbsolutePath().normalize();
+        this.tcpPort = tcpPort;
+        this.tcpAllowOthers = tcpAllowOthers;
+        this.backupDir = backupDir.isBlank()
+                ? databaseFile.resolveSibling("backup")
+                : Path.of(backupDir).toAbsolutePath().normalize();
+        this.backupFormat = backupFormat.toLowerCase();
+        this.backupKeep = Math.max(1, backupKeep);
+        this.compactFillRate = compactFillRate;
+        this.compactMinFileSize = compactMinFileSizeMb * 1024 * 1024;
+        this.compactMaxTimeMs = compactMaxTimeMs;
+        if (!List.of("backup", "script").contains(this.backupFormat)) {
+            throw new IllegalStateException("Unknown db.h2.backup.format '" + backupFormat + "', use backup or script");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Server mode: the application keeps its embedded connections and other tools connect over TCP
+    @PostConstruct
+    public void startServer() throws SQLException {
+        if (!enabled || !"server".equals(mode)) {
+            return;
+        }
+        List<String> args = new ArrayList<>(List.of("-tcp", "-tcpPort", String.valueOf(tcpPort), "-ifExists"));
+        if (tcpAllowOthers) {
+            args.add("-tcpAllowOthers");
+        }
+        tcpServer = Server.createTcpServer(args.toArray(String[]::new)).start();
+        String file = databaseFile.toString();
+        logger.info("✅ H2 TCP server on port {}, JDBC URL: jdbc:h2:tcp://localhost:{}/{}",
+                tcpServer.getPort(), tcpServer.getPort(), file.substring(0, file.length() - ".mv.db".length()));
+    }
+
+    @PreDestroy
+    public void stopServer() {
+        if (tcpServer != null) {
+            tcpServer.stop();
+        }
+    }
+
+    /**
+     * Online backup while the application keeps serving. "backup" (BACKUP TO) copies the database file as of one
+     * consistent point, "script" (SCRIPT TO) writes a compressed SQL dump, which holds only live data and is
+     * restored with RUNSCRIPT. Old backups beyond backup.keep are removed.
+     */
+    @Scheduled(cron = "${db.h2.backup.cron:0 30 2 * * *}")
+    public void scheduledBackup() {
+        if (enabled) {
+            try {
+                backup();
+            } catch (SQLException | IOException e) {
+                logger.error("H2 backup failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> backup() throws SQLException, IOException {
+        Files.createDirectories(backupDir);
+        String name = databaseName() + "-" + BACKUP_TIMESTAMP.format(Instant.now())
+                + ("script".equals(backupFormat) ? ".sql.zip" : ".zip");
+        Path target = backupDir.resolve(name);
+        // Written under a temporary name so an interrupted backup is never taken for a complete one
+        Path partial = backupDir.resolve(name + ".part");
+
+        long started = System.nanoTime();
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement()) {
+            String file = partial.toString().replace("'", "''");
+            st.execute("script".equals(backupFormat)
+                    ? "SCRIPT TO '" + file + "' COMPRESSION ZIP"
+                    : "BACKUP TO '" + file + "'");
+        } catch (SQLException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+        long millis = (System.nanoTime() - started) / 1_000_000;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("at", Instant.now().toString());
+        result.put("file", target.toString());
+        result.put("format", backupFormat);
+        result.put("sizeBytes", Files.size(target));
+        result.put("durationMs", millis);
+        result.put("removed", removeOldBackups(target));
+        lastBackup = result;
+        logger.info("✅ H2 backup written to {} ({} bytes, {} ms)", target, result.get("sizeBytes"), millis);
+        return result;
+    }
+
+    /**
+     * Compacts the database file when live data fills less than compact.fill-rate percent of it: chunks are
+     * rewritten towards the start of the file and the file is truncated, for at most compact.max-time-ms.
+     * H2 has no SQL statement for this short of SHUTDOWN COMPACT, so it goes through H2's internal store API and
+     * is skipped, with a warning, when that API is not there or another process serves the file (auto-server).
+     * On small or busy files it can use the whole time budget and leave the fill rate lower than before, so
+     * files under compact.min-file-size-mb are never compacted, not even on request.
+     */
+    @Scheduled(fixedDelayString = "${db.h2.compact.interval-ms:3600000}",
+            initialDelayString = "${db.h2.compact.interval-ms:3600000}")
+    public void scheduledCompaction() {
+        if (enabled) {
+            try {
+                compact(false);
+            } catch (SQLException e) {
+                logger.error("H2 compaction failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> compact(boolean force) throws SQLException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("at", Instant.now().toString());
+        try (Connection conn = dataSource.getConnection()) {
+            Map<String, String> before = storeInfo(conn);
+            long sizeBefore = Long.parseLong(before.getOrDefault("info.FILE_SIZE", "0"));
+            int fillRate = Integer.parseInt(before.getOrDefault("info.CHUNKS_FILL_RATE", "100"));
+            result.put("fileSizeBefore", sizeBefore);
+            result.put("chunksFillRateBefore", fillRate);
+
+            if (sizeBefore < compactMinFileSize) {
+                result.put("compacted", false);
+                result.put("reason", "file is smaller than db.h2.compact.min-file-size-mb");
+                return result;
+            }
+            if (!force && fillRate >= compactFillRate) {
+                result.put("compacted", false);
+                return result;
+            }
+
+            long started = System.nanoTime();
+            String skipped = compactStore(conn);
+            if (skipped != null) {
+                result.put("compacted", false);
+                result.put("reason", skipped);
+                return result;
+            }
+            long millis = (System.nanoTime() - started) / 1_000_000;
+
+            Map<String, String> after = storeInfo(conn);
+            result.put("compacted", true);
+            result.put("fileSizeAfter", Long.parseLong(after.getOrDefault("info.FILE_SIZE", "0")));
+            result.put("chunksFillRateAfter", Integer.parseInt(after.getOrDefault("info.CHUNKS_FILL_RATE", "100")));
+            result.put("durationMs", millis);
+            logger.info("✅ H2 file compacted from {} to {} bytes in {} ms",
+                    sizeBefore, result.get("fileSizeAfter"), millis);
+        }
+        lastCompaction = result;
+        return result;
+    }
+
+    // Null when compacted, otherwise why not
+    private String compactStore(Connection conn) throws SQLException {
+        try {
+            Session session = conn.unwrap(JdbcConnection.class).getSession();
+            if (!(session instanceof SessionLocal local)) {
+                logger.warn("H2 compaction skipped: the database is served by another process");
+                return "database is served by another process";
+            }
+            local.getDatabase().getStore().compactFile(compactMaxTimeMs);
+            return null;
+        } catch (LinkageError | RuntimeException e) {
+            logger.warn("H2 compaction skipped, this H2 version does not offer the internal store API: {}",
+                    e.toString());
+            return "online compaction is not supported by this H2 version, use SHUTDOWN COMPACT";
+        }
+    }
+
+    // File size, fill rates and cache figures reported by the MVStore, plus the last backup and compaction
+    public Map<String, Object> status() throws SQLException, IOException {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("mode", mode);
+        status.put("file", databaseFile.toString());
+        try (Connection conn = metaDataSource.getConnection()) {
+            Map<String, String> info = storeInfo(conn);
+            status.put("fileSizeBytes", Long.parseLong(info.getOrDefault("info.FILE_SIZE", "0")));
+            // Share of the file used by live pages, and of the chunks' space still live
+            status.put("fillRate", Integer.parseInt(info.getOrDefault("info.FILL_RATE", "0")));
+            status.put("chunksFillRate", Integer.parseInt(info.getOrDefault("info.CHUNKS_FILL_RATE", "0")));
+            status.put("chunkCount", Integer.parseInt(info.getOrDefault("info.CHUNK_COUNT", "0")));
+            status.put("pageCount", Long.parseLong(info.getOrDefault("info.PAGE_COUNT", "0")));
+            status.put("livePageCount", Long.parseLong(info.getOrDefault("info.PAGE_COUNT_LIVE", "0")));
+            status.put("cacheMaxSizeMb", Integer.parseInt(info.getOrDefault("info.CACHE_MAX_SIZE", "0")));
+            status.put("cacheSizeMb", Integer.parseInt(info.getOrDefault("info.CACHE_SIZE", "0")));
+            status.put("cacheHitRatio", Integer.parseInt(info.getOrDefault("info.CACHE_HIT_RATIO", "0")));
+            status.put("fileReadBytes", Long.parseLong(info.getOrDefault("info.FILE_READ_BYTES", "0")));
+            status.put("fileWriteBytes", Long.parseLong(info.getOrDefault("info.FILE_WRITE_BYTES", "0")));
+        }
+        status.put("compactBelowChunksFillRate", compactFillRate);
+        status.put("lastCompaction", lastCompaction);
+        status.put("backupDir", backupDir.toString());
+        status.put("backups", backups().stream().map(path -> path.getFileName().toString()).toList());
+        status.put("lastBackup", lastBackup);
+        return status;
+    }
+
+    private static Map<String, String> storeInfo(Connection conn) throws SQLException {
+        Map<String, String> info = new HashMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT SETTING_NAME, SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS " +
+                     "WHERE SETTING_NAME LIKE 'info.%'")) {
+            while (rs.next()) {
+                info.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        return info;
+    }
+
+    // Newest first
+    private List<Path> backups() throws IOException {
+        if (!Files.isDirectory(backupDir)) {
+            return List.of();
+        }
+        String prefix = databaseName() + "-";
+        try (Stream<Path> files = Files.list(backupDir)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(prefix) && name.endsWith(".zip");
+                    })
+                    .sorted(Comparator.comparing((Path path) -> path.getFileName().toString()).reversed())
+                    .toList();
+        }
+    }
+
+    private int removeOldBackups(Path written) throws IOException {
+        List<Path> backups = backups();
+        int removed = 0;
+        for (Path old : backups.subList(Math.min(backupKeep, backups.size()), backups.size())) {
+            if (!old.equals(written)) {
+                Files.deleteIfExists(old);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private String databaseName() {
+        String file = databaseFile.getFileName().toString();
+        return file.substring(0, file.length() - ".mv.db".length());
+    }
+}
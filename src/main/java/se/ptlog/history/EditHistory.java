@@ -0,0 +1,219 @@
+package se.ptlog.history;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.ptlog.compression.DeflateCodec;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Version history of the ANALYS and SYFTE texts in PTLOG_HISTORIK.
+ * Each edit is stored as a compressed delta against the previous version, so storage and write I/O follow the
+ * size of the change. Every snapshot-interval versions a full compressed copy is stored instead, which bounds the
+ * number of deltas applied when an old version is rebuilt.
+ */
+@Component
+public class EditHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(EditHistory.class);
+
+    public static final List<String> FIELDS = List.of("ANALYS", "SYFTE");
+
+    private static final String IDS_FOR_TEST =
+            "SELECT ID FROM PTLOG WHERE PROJEKT = ? AND TESTNAMN = ? " +
+            "UNION ALL SELECT ID FROM PTLOG_ARKIV WHERE PROJEKT = ? AND TESTNAMN = ?";
+
+    private final DataSource readDataSource;
+    private final int snapshotInterval;
+
+    public EditHistory(@Qualifier("readDataSource") DataSource readDataSource,
+                       @Value("${history.snapshot-interval:10}") int snapshotInterval) {
+        this.readDataSource = readDataSource;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+    }
+
+    /**
+     * Records an edit of one row's field, on the caller's connection so it commits or rolls back with the update.
+     * The first edit of a text stores the previous value as a snapshot. The same happens when the previous value
+     * does not match the latest version (the text was changed outside the history), so deltas are always applied
+     * to the text they were computed from.
+     */
+    public void record(Connection conn, long ptlogId, String projekt, String field,
+                       String previous, String current) throws SQLException {
+        previous = previous == null ? "" : previous;
+        current = current == null ? "" : current;
+        if (previous.equals(current)) {
+            return;
+        }
+
+        int version = 0;
+        int snapshotVersion = 0;
+        long checksum = -1;
+        try (PreparedStatement st = conn.prepareStatement(
+                "SELECT VERSION, CHECKSUM, (SELECT MAX(s.VERSION) FROM PTLOG_HISTORIK s " +
+                "WHERE s.PTLOG_ID = h.PTLOG_ID AND s.FALT = h.FALT AND s.SNAPSHOT = 1) AS SNAPSHOT_VERSION " +
+                "FROM PTLOG_HISTORIK h WHERE PTLOG_ID = ? AND FALT = ? ORDER BY VERSION DESC FETCH FIRST 1 ROWS ONLY")) {
+            st.setLong(1, ptlogId);
+            st.setString(2, field);
+            try (ResultSet rs = st.executeQuery()) {
+                if (rs.next()) {
+                    version = rs.getInt("VERSION");
+                    checksum = rs.getLong("CHECKSUM");
+                    snapshotVersion = rs.getInt("SNAPSHOT_VERSION");
+                }
+            }
+        }
+
+        if (version == 0 || checksum != checksum(previous)) {
+            version++;
+            insert(conn, ptlogId, projekt, field, version, true, previous,
+                    previous.getBytes(StandardCharsets.UTF_8));
+            snapshotVersion = version;
+        }
+
+        version++;
+        boolean snapshot = version - snapshotVersion >= snapshotInterval;
+        byte[] payload = snapshot
+                ? current.getBytes(StandardCharsets.UTF_8)
+                : TextDelta.delta(previous, current);
+        insert(conn, ptlogId, projekt, field, version, snapshot, current, payload);
+    }
+
+    /**
+     * Versions of a test's field, oldest first. Tests are identified like everywhere else by project and name;
+     * should several rows share the name, each row's versions are listed under its own ID.
+     */
+    public List<Map<String, Object>> versions(String projekt, String testnamn, String field) throws SQLException {
+        String sql = "SELECT PTLOG_ID, VERSION, DATUM, SNAPSHOT, LANGD, STORLEK FROM PTLOG_HISTORIK " +
+                "WHERE FALT = ? AND PTLOG_ID IN (" + IDS_FOR_TEST + ") ORDER BY PTLOG_ID, VERSION";
+        List<Map<String, Object>> versions = new ArrayList<>();
+        try (Connection conn = readDataSource.getConnection();
+             PreparedStatement st = conn.prepareStatement(sql)) {
+            st.setString(1, field);
+            bindTest(st, 2, projekt, testnamn);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("ID", rs.getLong("PTLOG_ID"));
+                    row.put("VERSION", rs.getInt("VERSION"));
+                    row.put("DATUM", rs.getTimestamp("DATUM").toInstant().toString());
+                    row.put("SNAPSHOT", rs.getInt("SNAPSHOT") == 1);
+                    row.put("LANGD", rs.getInt("LANGD"));
+                    row.put("STORLEK", rs.getInt("STORLEK"));
+                    versions.add(row);
+                }
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Rebuilds one version from the nearest snapshot at or before it. Returns null if the test or version is unknown.
+     * id selects the row when several tests share the name, otherwise the oldest row is used.
+     */
+    public String version(String projekt, String testnamn, String field, int version, Long id) throws SQLException {
+        try (Connection conn = readDataSource.getConnection()) {
+            Long ptlogId = id;
+            if (ptlogId == null) {
+                try (PreparedStatement st = conn.prepareStatement(
+                        "SELECT MIN(ID) AS ID FROM (" + IDS_FOR_TEST + ") t")) {
+                    bindTest(st, 1, projekt, testnamn);
+                    try (ResultSet rs = st.executeQuery()) {
+                        if (rs.next()) {
+                            long minId = rs.getLong("ID");
+                            ptlogId = rs.wasNull() ? null : minId;
+                        }
+                    }
+                }
+                if (ptlogId == null) {
+                    return null;
+                }
+            }
+
+            String sql = "SELECT VERSION, SNAPSHOT, CHECKSUM, DATA FROM PTLOG_HISTORIK " +
+                    "WHERE PTLOG_ID = ? AND FALT = ? AND VERSION <= ? AND VERSION >= " +
+                    "(SELECT MAX(VERSION) FROM PTLOG_HISTORIK WHERE PTLOG_ID = ? AND FALT = ? " +
+                    "AND SNAPSHOT = 1 AND VERSION <= ?) ORDER BY VERSION";
+            try (PreparedStatement st = conn.prepareStatement(sql)) {
+                st.setLong(1, ptlogId);
+                st.setString(2, field);
+                st.setInt(3, version);
+                st.setLong(4, ptlogId);
+                st.setString(5, field);
+                st.setInt(6, version);
+                String text = null;
+                int last = 0;
+                long checksum = 0;
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        byte[] payload = DeflateCodec.decode(rs.getBytes("DATA"));
+                        text = rs.getInt("SNAPSHOT") == 1
+                                ? new String(payload, StandardCharsets.UTF_8)
+                                : TextDelta.apply(text, payload);
+                        last = rs.getInt("VERSION");
+                        checksum = rs.getLong("CHECKSUM");
+                    }
+                }
+                if (last != version) {
+                    return null;
+                }
+                if (checksum(text) != checksum) {
+                    throw new SQLException("History of test " + ptlogId + " " + field +
+                            " version " + version + " does not match its checksum");
+                }
+                return text;
+            }
+        }
+    }
+
+    // Removes the history of the test's rows in PTLOG and PTLOG_ARKIV, on the caller's connection
+    public int deleteForTest(Connection conn, String projekt, String testnamn) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement(
+                "DELETE FROM PTLOG_HISTORIK WHERE PTLOG_ID IN (" + IDS_FOR_TEST + ")")) {
+            bindTest(st, 1, projekt, testnamn);
+            return st.executeUpdate();
+        }
+    }
+
+    private void insert(Connection conn, long ptlogId, String projekt, String field, int version,
+                        boolean snapshot, String text, byte[] payload) throws SQLException {
+        byte[] stored = DeflateCodec.encode(payload);
+        try (PreparedStatement st = conn.prepareStatement(
+                "INSERT INTO PTLOG_HISTORIK (PTLOG_ID, PROJEKT, FALT, VERSION, DATUM, SNAPSHOT, LANGD, CHECKSUM, STORLEK, DATA) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            st.setLong(1, ptlogId);
+            st.setString(2, projekt);
+            st.setString(3, field);
+            st.setInt(4, version);
+            st.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+            st.setInt(6, snapshot ? 1 : 0);
+            st.setInt(7, text.length());
+            st.setLong(8, checksum(text));
+            st.setInt(9, stored.length);
+            st.setBytes(10, stored);
+            st.executeUpdate();
+        }
+        logger.debug("Stored {} {} version {} of test {} ({} chars in {} bytes)",
+                field, snapshot ? "snapshot" : "delta", version, ptlogId, text.length(), stored.length);
+    }
+
+    private static void bindTest(PreparedStatement st, int index, String projekt, String testnamn) throws SQLException {
+        st.setString(index, projekt);
+        st.setString(index + 1, testnamn);
+        st.setString(index + 2, projekt);
+        st.setString(index + 3, testnamn);
+    }
+
+    static long checksum(String text) {
+        CRC32 crc = new CRC32();
+        crc.update(text.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
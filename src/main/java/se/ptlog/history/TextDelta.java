@@ -0,0 +1,70 @@
+package se.ptlog.history;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Deltas of history entries. A delta replaces the part between the common prefix and common suffix of two
+ * texts, which is what an edit of an analysis usually is, so its size follows the size of the change.
+ * EditHistory stores snapshots and deltas with DeflateCodec.
+ */
+public final class TextDelta {
+
+    private TextDelta() {
+    }
+
+    // Payload: varint prefix length, varint suffix length, replacement text (UTF-8). Lengths are in chars.
+    public static byte[] delta(String from, String to) {
+        int max = Math.min(from.length(), to.length());
+        int prefix = 0;
+        while (prefix < max && from.charAt(prefix) == to.charAt(prefix)) {
+            prefix++;
+        }
+        // Never split a surrogate pair between the kept and the replaced part
+        if (prefix > 0 && Character.isHighSurrogate(from.charAt(prefix - 1))) {
+            prefix--;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && from.charAt(from.length() - 1 - suffix) == to.charAt(to.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(to.charAt(to.length() - suffix))) {
+            suffix--;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, prefix);
+        writeVarint(out, suffix);
+        out.writeBytes(to.substring(prefix, to.length() - suffix).getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    public static String apply(String from, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        int prefix = readVarint(in);
+        int suffix = readVarint(in);
+        String replacement = new String(delta, in.position(), in.remaining(), StandardCharsets.UTF_8);
+        return from.substring(0, prefix) + replacement + from.substring(from.length() - suffix);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package se.ptlog.idempotency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Responses of write requests sent with an Idempotency-Key header, so a client retry gets the original response
+ * instead of inserting the row again. Recent keys are answered from a bounded in-memory map without touching the
+ * database; PTLOG_IDEMPOTENCY holds every key for the TTL so retries that reach another instance are answered too.
+ * The key is written in the same transaction as the row it produced, so a key exists exactly when its row does.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    public record Stored(String fingerprint, String body, long expiresAt) {
+    }
+
+    private final DataSource dataSource;
+    private final Duration ttl;
+    private final Map<String, Stored> recent;
+
+    public IdempotencyStore(DataSource dataSource,
+                            @Value("${idempotency.ttl-hours:24}") long ttlHours,
+                            @Value("${idempotency.max-entries:10000}") int maxEntries) {
+        this.dataSource = dataSource;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stored> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // Identifies the request a key was first used for, so reusing a key for another request can be refused
+    public static String fingerprint(String endpoint, String body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(endpoint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(body.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // In-memory lookup, null for unknown or expired keys (and when no key was sent)
+    public Stored lookup(String key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (recent) {
+            Stored stored = recent.get(key);
+            if (stored != null && stored.expiresAt() < System.currentTimeMillis()) {
+                recent.remove(key);
+                return null;
+            }
+            return stored;
+        }
+    }
+
+    // Database lookup on the caller's transaction
+    public Stored find(Connection conn, String key) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement(
+                "SELECT FINGERPRINT, SVAR, SKAPAD FROM PTLOG_IDEMPOTENCY WHERE NYCKEL = ?")) {
+            st.setString(1, key);
+            try (ResultSet rs = st.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                long expiresAt = rs.getTimestamp("SKAPAD").getTime() + ttl.toMillis();
+                if (expiresAt < System.currentTimeMillis()) {
+                    // Expired but not purged yet: the key is free again
+                    try (PreparedStatement delete = conn.prepareStatement(
+                            "DELETE FROM PTLOG_IDEMPOTENCY WHERE NYCKEL = ?")) {
+                        delete.setString(1, key);
+                        delete.executeUpdate();
+                    }
+                    return null;
+                }
+                return new Stored(rs.getString("FINGERPRINT"), rs.getString("SVAR"), expiresAt);
+            }
+        }
+    }
+
+    // Stores the response on the caller's transaction; call remember() once it has committed
+    public Stored save(Connection conn, String key, String fingerprint, String body) throws SQLException {
+        long now = System.currentTimeMillis();
+        try (PreparedStatement st = conn.prepareStatement(
+                "INSERT INTO PTLOG_IDEMPOTENCY (NYCKEL, FINGERPRINT, SVAR, SKAPAD) VALUES (?, ?, ?, ?)")) {
+            st.setString(1, key);
+            st.setString(2, fingerprint);
+            st.setString(3, body);
+            st.setTimestamp(4, new Timestamp(now));
+            st.executeUpdate();
+        }
+        return new Stored(fingerprint, body, now + ttl.toMillis());
+    }
+
+    public void remember(String key, Stored stored) {
+        synchronized (recent) {
+            recent.put(key, stored);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.cleanup-interval-ms:3600000}",
+            initialDelayString = "${idempotency.cleanup-interval-ms:3600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (recent) {
+            recent.values().removeIf(stored -> stored.expiresAt() < now);
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement st = conn.prepareStatement("DELETE FROM PTLOG_IDEMPOTENCY WHERE SKAPAD < ?")) {
+            st.setTimestamp(1, new Timestamp(now - ttl.toMillis()));
+            int rows = st.executeUpdate();
+            if (rows > 0) {
+                logger.info("Purged {} expired idempotency key(s)", rows);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to purge idempotency keys: {}", e.getMessage());
+        }
+    }
+}
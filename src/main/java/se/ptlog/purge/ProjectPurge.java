@@ -0,0 +1,334 @@
+package se.ptlog.purge;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import se.ptlog.readmodel.ChangeLog;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deletion of projects. A delete only tombstones the project: PTLOG_PROJEKT.RADERAD is set and a PTLOG_RADERING row
+ * added in one short transaction, so the project leaves the project lists at once, takes no new tests and its tests
+ * are hidden from /getData. The first background run counts the rows to purge (TOTALT stays null until then), then
+ * its tests, edit history and load test results are deleted,
+ * chunkSize rows per transaction, so a large project no longer builds up undo and row locks in one long transaction
+ * (deleting the PTLOG_PROJEKT row would cascade to all its tests at once, so it goes last). Each chunk locks the
+ * PTLOG_RADERING row and records its progress in the same transaction, so instances sharing the database never
+ * purge the same project at once and a purge interrupted by a restart continues where it stopped.
+ */
+@Component
+public class ProjectPurge {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectPurge.class);
+
+    public static final String COLUMN = "RADERAD";
+
+    public static final String PENDING = "PAGAR";
+    public static final String DONE = "KLAR";
+
+    private record Step(String table, String condition) {
+    }
+
+    // Dependent rows first, the tests themselves last
+    private static final List<Step> STEPS = List.of(
+            new Step("PTLOG_RESULTAT_TRANSAKTION", "RESULTAT_ID IN (SELECT ID FROM PTLOG_RESULTAT WHERE PROJEKT = ?)"),
+            new Step("PTLOG_RESULTAT", "PROJEKT = ?"),
+            new Step("PTLOG_HISTORIK", "PROJEKT = ?"),
+            new Step("PTLOG_ARKIV", "PROJEKT = ?"),
+            new Step("PTLOG", "PROJEKT = ?"));
+
+    private static final String JOB_COLUMNS = "ID, PROJEKT, STATUS, BEGARD, AVSLUTAD, TOTALT, RADERADE, STEG";
+
+    private final DataSource dataSource;
+    private final ChangeLog changeLog;
+    private final int chunkSize;
+    private final long maxRunMillis;
+    private final int keepDays;
+    private final long idleRefreshMillis;
+
+    // Projects with a pending purge on any instance, refreshed by every run, with the time they were added here
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    // While nothing is pending, PTLOG_RADERING is only read again at this time (System.nanoTime)
+    private volatile long nextIdleRefresh;
+
+    public ProjectPurge(DataSource dataSource, ChangeLog changeLog,
+                        @Value("${purge.chunk-size:5000}") int chunkSize,
+                        @Value("${purge.max-run-ms:1000}") long maxRunMillis,
+                        @Value("${purge.keep-days:30}") int keepDays,
+                        @Value("${purge.idle-refresh-ms:30000}") long idleRefreshMillis) {
+        this.dataSource = dataSource;
+        this.changeLog = changeLog;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxRunMillis = Math.max(1, maxRunMillis);
+        this.keepDays = Math.max(0, keepDays);
+        this.idleRefreshMillis = Math.max(0, idleRefreshMillis);
+    }
+
+    @PostConstruct
+    public void init() {
+        refreshPending();
+        nextIdleRefresh = System.nanoTime() + Duration.ofMillis(idleRefreshMillis).toNanos();
+    }
+
+    /**
+     * Tombstones a project and schedules the purge of its rows. Returns false if there is no such project.
+     * The rows are counted by the background purge, not here while the project row is locked.
+     */
+    public boolean delete(String projekt) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Waits for inserts holding the project row, later ones see the tombstone
+                try (PreparedStatement st = conn.prepareStatement(
+                        "UPDATE PTLOG_PROJEKT SET RADERAD = 1 WHERE NAMN = ? AND RADERAD = 0")) {
+                    st.setString(1, projekt);
+                    if (st.executeUpdate() == 0) {
+                        conn.rollback();
+                        return false;
+                    }
+                }
+                try (PreparedStatement st = conn.prepareStatement(
+                        "INSERT INTO PTLOG_RADERING (PROJEKT, STATUS, BEGARD, RADERADE) VALUES (?, ?, ?, 0)")) {
+                    st.setString(1, projekt);
+                    st.setString(2, PENDING);
+                    st.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                    st.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        pending.put(projekt, System.nanoTime());
+        logger.info("Deleted project {}, its rows will be purged in the background", projekt);
+        return true;
+    }
+
+    // True while the project's rows are being purged, its remaining tests must not be served
+    public boolean isDeleted(String projekt) {
+        return pending.containsKey(projekt);
+    }
+
+    // Asked from the database rather than the local view, the name stays taken until the purge is done
+    public boolean hasPendingPurge(String projekt) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement st = conn.prepareStatement(
+                     "SELECT COUNT(*) FROM PTLOG_RADERING WHERE PROJEKT = ? AND STATUS = ?")) {
+            st.setString(1, projekt);
+            st.setString(2, PENDING);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() && rs.getLong(1) > 0;
+            }
+        }
+    }
+
+    // Purges of the project (all projects when null), newest first
+    public List<Map<String, Object>> status(String projekt) throws SQLException {
+        List<Map<String, Object>> jobs = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement st = conn.prepareStatement("SELECT " + JOB_COLUMNS + " FROM PTLOG_RADERING " +
+                     (projekt != null ? "WHERE PROJEKT = ? " : "") + "ORDER BY ID DESC")) {
+            if (projekt != null) {
+                st.setString(1, projekt);
+            }
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    long total = rs.getLong("TOTALT");
+                    boolean counted = !rs.wasNull();
+                    long deleted = rs.getLong("RADERADE");
+                    boolean done = DONE.equals(rs.getString("STATUS"));
+                    Timestamp finished = rs.getTimestamp("AVSLUTAD");
+                    Map<String, Object> job = new LinkedHashMap<>();
+                    job.put("id", rs.getLong("ID"));
+                    job.put("projekt", rs.getString("PROJEKT"));
+                    job.put("status", rs.getString("STATUS"));
+                    job.put("begard", rs.getTimestamp("BEGARD").toInstant().toString());
+                    job.put("avslutad", finished != null ? finished.toInstant().toString() : null);
+                    job.put("totalt", counted ? total : null);
+                    job.put("raderade", deleted);
+                    job.put("procent", done || counted && total == 0 ? 100
+                            : counted ? Math.min(99, deleted * 100 / total) : 0);
+                    job.put("steg", rs.getString("STEG"));
+                    jobs.add(job);
+                }
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Works through pending purges chunk by chunk for at most max-run-ms, then leaves the scheduler thread to the
+     * other background jobs until the next run. With no purge pending here, the database is only asked every
+     * idle-refresh-ms whether another instance has deleted a project.
+     */
+    @Scheduled(fixedDelayString = "${purge.interval-ms:1000}", initialDelayString = "${purge.interval-ms:1000}")
+    public void purge() {
+        if (pending.isEmpty() && System.nanoTime() - nextIdleRefresh < 0) {
+            return;
+        }
+        nextIdleRefresh = System.nanoTime() + Duration.ofMillis(idleRefreshMillis).toNanos();
+        long deadline = System.currentTimeMillis() + maxRunMillis;
+        for (Map.Entry<Long, String> job : refreshPending().entrySet()) {
+            try {
+                boolean more = true;
+                while (more && System.currentTimeMillis() < deadline) {
+                    more = purgeChunk(job.getKey(), job.getValue());
+                }
+            } catch (SQLException e) {
+                logger.error("Failed to purge project {}: {}", job.getValue(), e.getMessage());
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                break;
+            }
+        }
+    }
+
+    // Counts the rows to purge on the first run, then deletes up to chunkSize rows of the first table that still has
+    // some; false once the purge is complete
+    private boolean purgeChunk(long id, String projekt) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement lock = conn.prepareStatement(
+                        "SELECT STATUS, TOTALT FROM PTLOG_RADERING WHERE ID = ? FOR UPDATE")) {
+                    lock.setLong(1, id);
+                    try (ResultSet rs = lock.executeQuery()) {
+                        if (!rs.next() || !PENDING.equals(rs.getString(1))) {
+                            // Finished by another instance
+                            conn.commit();
+                            finished(projekt);
+                            return false;
+                        }
+                        rs.getLong(2);
+                        if (rs.wasNull()) {
+                            countRows(conn, id, projekt);
+                            conn.commit();
+                            return true;
+                        }
+                    }
+                }
+                for (Step step : STEPS) {
+                    int rows;
+                    try (PreparedStatement st = conn.prepareStatement(
+                            "DELETE FROM " + step.table() + " WHERE " + step.condition() + " AND ROWNUM <= ?")) {
+                        st.setString(1, projekt);
+                        st.setInt(2, chunkSize);
+                        rows = st.executeUpdate();
+                    }
+                    if (rows > 0) {
+                        try (PreparedStatement st = conn.prepareStatement(
+                                "UPDATE PTLOG_RADERING SET RADERADE = RADERADE + ?, STEG = ? WHERE ID = ?")) {
+                            st.setLong(1, rows);
+                            st.setString(2, step.table());
+                            st.setLong(3, id);
+                            st.executeUpdate();
+                        }
+                        conn.commit();
+                        return true;
+                    }
+                }
+                try (PreparedStatement st = conn.prepareStatement(
+                        "DELETE FROM PTLOG_PROJEKT WHERE NAMN = ? AND RADERAD = 1")) {
+                    st.setString(1, projekt);
+                    st.executeUpdate();
+                }
+                try (PreparedStatement st = conn.prepareStatement(
+                        "UPDATE PTLOG_RADERING SET STATUS = ?, AVSLUTAD = ?, STEG = NULL WHERE ID = ?")) {
+                    st.setString(1, DONE);
+                    st.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+                    st.setLong(3, id);
+                    st.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        logger.info("Purged deleted project {}", projekt);
+        finished(projekt);
+        return false;
+    }
+
+    private void countRows(Connection conn, long id, String projekt) throws SQLException {
+        long total = 0;
+        for (Step step : STEPS) {
+            try (PreparedStatement st = conn.prepareStatement(
+                    "SELECT COUNT(*) FROM " + step.table() + " WHERE " + step.condition())) {
+                st.setString(1, projekt);
+                try (ResultSet rs = st.executeQuery()) {
+                    rs.next();
+                    total += rs.getLong(1);
+                }
+            }
+        }
+        try (PreparedStatement st = conn.prepareStatement(
+                "UPDATE PTLOG_RADERING SET TOTALT = ? WHERE ID = ?")) {
+            st.setLong(1, total);
+            st.setLong(2, id);
+            st.executeUpdate();
+        }
+        logger.info("Project {} has {} row(s) to purge", projekt, total);
+    }
+
+    private void finished(String projekt) {
+        pending.remove(projekt);
+        changeLog.projectChanged(projekt);
+    }
+
+    // A project tombstoned here while the query ran may be missing from its result, so only entries older than
+    // the query are dropped
+    private Map<Long, String> refreshPending() {
+        long started = System.nanoTime();
+        Map<Long, String> jobs = new LinkedHashMap<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement st = conn.prepareStatement(
+                     "SELECT ID, PROJEKT FROM PTLOG_RADERING WHERE STATUS = ? ORDER BY ID")) {
+            st.setString(1, PENDING);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    jobs.put(rs.getLong(1), rs.getString(2));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read pending project purges: {}", e.getMessage());
+            return jobs;
+        }
+        Collection<String> projects = jobs.values();
+        pending.entrySet().removeIf(entry -> entry.getValue() - started < 0 && !projects.contains(entry.getKey()));
+        for (String projekt : projects) {
+            pending.putIfAbsent(projekt, started);
+        }
+        return jobs;
+    }
+
+    @Scheduled(fixedDelayString = "${purge.cleanup-interval-ms:3600000}",
+            initialDelayString = "${purge.cleanup-interval-ms:3600000}")
+    public void removeFinished() {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement st = conn.prepareStatement(
+                     "DELETE FROM PTLOG_RADERING WHERE STATUS = ? AND AVSLUTAD < ?")) {
+            st.setString(1, DONE);
+            st.setTimestamp(2, new Timestamp(System.currentTimeMillis() - Duration.ofDays(keepDays).toMillis()));
+            int rows = st.executeUpdate();
+            if (rows > 0) {
+                logger.info("Removed {} finished project purge(s)", rows);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to remove finished project purges: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package se.ptlog.readmodel;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the read model coherent across instances sharing one database, without an external broker.
+ * Every write bumps the project's row in PTLOG_VERSION; each instance polls that small table and
+ * reloads only the projects whose version moved since it last looked.
+ */
+@Component
+public class ChangeLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeLog.class);
+
+    private final DataSource dataSource;
+    private final ReadModel readModel;
+    private final boolean enabled;
+    // Last PTLOG_VERSION seen per project, by the poller or by our own writes
+    private final Map<String, Long> seen = new ConcurrentHashMap<>();
+
+    public ChangeLog(DataSource dataSource, ReadModel readModel,
+                     @Value("${readmodel.sync.enabled:false}") boolean syncEnabled) {
+        this.dataSource = dataSource;
+        this.readModel = readModel;
+        this.enabled = syncEnabled && readModel.isEnabled();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            // Changes committed between the initial load and this read are picked up by the next reconcile
+            seen.putAll(readVersions());
+        }
+    }
+
+    // Called by write handlers after commit: publish the change to other instances, then refresh locally
+    public void projectChanged(String projekt) {
+        if (enabled && projekt != null) {
+            try {
+                seen.put(projekt, bumpVersion(projekt));
+            } catch (SQLException e) {
+                logger.error("Failed to bump version for project {}: {}", projekt, e.getMessage());
+            }
+        }
+        readModel.projectChanged(projekt);
+    }
+
+    @Scheduled(fixedDelayString = "${readmodel.sync.interval-ms:2000}",
+            initialDelayString = "${readmodel.sync.interval-ms:2000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        for (Map.Entry<String, Long> entry : readVersions().entrySet()) {
+            String projekt = entry.getKey();
+            Long previous = seen.put(projekt, entry.getValue());
+            if (previous == null || previous < entry.getValue()) {
+                logger.debug("Project {} changed on another instance (version {}), reloading", projekt, entry.getValue());
+                readModel.projectChanged(projekt);
+            }
+        }
+    }
+
+    private long bumpVersion(String projekt) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            int rows;
+            try (PreparedStatement st = conn.prepareStatement(
+                    "UPDATE PTLOG_VERSION SET VERSION = VERSION + 1 WHERE PROJEKT = ?")) {
+                st.setString(1, projekt);
+                rows = st.executeUpdate();
+            }
+            if (rows == 0) {
+                try (PreparedStatement st = conn.prepareStatement(
+                        "INSERT INTO PTLOG_VERSION (PROJEKT, VERSION) VALUES (?, 1)")) {
+                    st.setString(1, projekt);
+                    st.executeUpdate();
+                } catch (SQLIntegrityConstraintViolationException e) {
+                    // Another instance inserted the row first, bump it instead
+                    return bumpVersion(projekt);
+                }
+            }
+            try (PreparedStatement st = conn.prepareStatement(
+                    "SELECT VERSION FROM PTLOG_VERSION WHERE PROJEKT = ?")) {
+                st.setString(1, projekt);
+                try (ResultSet rs = st.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+        }
+    }
+
+    private Map<String, Long> readVersions() {
+        Map<String, Long> versions = new HashMap<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT PROJEKT, VERSION FROM PTLOG_VERSION")) {
+            while (rs.next()) {
+                versions.put(rs.getString(1), rs.getLong(2));
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read project versions: {}", e.getMessage());
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,245 @@
+package se.ptlog.readmodel;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import se.ptlog.compression.AnalysCompression;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Optional in-memory copy of PTLOG_PROJEKT and the active tests in PTLOG.
+ * Reads go through an immutable snapshot that is swapped atomically, so they never lock or touch the pool.
+ * Only projects with at most maxTestsPerProject tests are held, so the heap it takes stays bounded whatever the
+ * size of PTLOG; the tests of larger projects are read from the DB.
+ * Writers rebuild the affected project (copy-on-write) and a scheduled job reconciles everything against the DB.
+ * All lookups return null when disabled or unknown, callers then fall back to the database.
+ */
+@Component
+public class ReadModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadModel.class);
+
+    private static final String PROJECTS_SQL =
+            "SELECT NAMN, BESKRIVNING, ARKIVERAD FROM PTLOG_PROJEKT WHERE RADERAD = 0 ORDER BY NAMN";
+    private static final String TEST_COLUMNS =
+            "TO_CHAR(DATUM, 'YYYY-MM-DD HH24:MI') AS DATUM, " +
+            "TYP, TESTNAMN, SYFTE, ANALYS, ANALYS_KOMPRIMERAD, PROJEKT, TESTARE, MARKERA ";
+    // Tests of deleted projects are left out while they are purged
+    private static final String LIVE_PROJECTS = "PROJEKT IN (SELECT NAMN FROM PTLOG_PROJEKT WHERE RADERAD = 0) ";
+    private static final String LARGE_PROJECTS_SQL =
+            "SELECT PROJEKT FROM ptlog GROUP BY PROJEKT HAVING COUNT(*) > ?";
+    private static final String ALL_TESTS_SQL =
+            "SELECT " + TEST_COLUMNS + "FROM ptlog WHERE " + LIVE_PROJECTS +
+            "AND PROJEKT NOT IN (" + LARGE_PROJECTS_SQL + ") ORDER BY PROJEKT, DATUM DESC";
+    // One row more than the limit tells that the project is too large to hold
+    private static final String PROJECT_TESTS_SQL =
+            "SELECT " + TEST_COLUMNS + "FROM ptlog WHERE PROJEKT = ? AND " + LIVE_PROJECTS +
+            "ORDER BY DATUM DESC FETCH FIRST ? ROWS ONLY";
+
+    private record Snapshot(List<Map<String, Object>> projects,
+                            Map<String, Map<String, Object>> projectsByName,
+                            Map<String, List<Map<String, Object>>> testsByProject,
+                            Set<String> largeProjects) {
+    }
+
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final int maxTestsPerProject;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    // Serializes writers so a slow reconcile can't overwrite a newer project refresh, readers never take it
+    private final Object writeLock = new Object();
+
+    public ReadModel(DataSource dataSource, @Value("${readmodel.enabled:false}") boolean enabled,
+                     @Value("${readmodel.max-tests-per-project:500}") int maxTestsPerProject) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.maxTestsPerProject = Math.max(0, maxTestsPerProject);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            reconcile();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${readmodel.reconcile-interval-ms:60000}",
+            initialDelayString = "${readmodel.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (writeLock) {
+            try (Connection conn = dataSource.getConnection()) {
+                List<Map<String, Object>> projects = queryProjects(conn);
+
+                Set<String> large = new HashSet<>();
+                try (PreparedStatement st = conn.prepareStatement(LARGE_PROJECTS_SQL)) {
+                    st.setInt(1, maxTestsPerProject);
+                    try (ResultSet rs = st.executeQuery()) {
+                        while (rs.next()) {
+                            large.add(rs.getString(1));
+                        }
+                    }
+                }
+
+                Map<String, List<Map<String, Object>>> tests = new HashMap<>();
+                try (PreparedStatement st = conn.prepareStatement(ALL_TESTS_SQL)) {
+                    st.setInt(1, maxTestsPerProject);
+                    try (ResultSet rs = st.executeQuery()) {
+                        for (Map<String, Object> row : readRows(rs)) {
+                            tests.computeIfAbsent((String) row.get("PROJEKT"), k -> new ArrayList<>()).add(row);
+                        }
+                    }
+                }
+
+                Map<String, List<Map<String, Object>>> frozen = new HashMap<>();
+                tests.forEach((projekt, rows) -> frozen.put(projekt, List.copyOf(rows)));
+                snapshot.set(buildSnapshot(projects, frozen, large));
+                logger.debug("Read model reconciled: {} projects, {} with tests, {} read from the DB",
+                        projects.size(), frozen.size(), large.size());
+            } catch (SQLException e) {
+                // Keep serving the previous snapshot, the next run tries again
+                logger.error("Failed to reconcile read model: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Called by write handlers after commit, reloads the project list and the given project's tests
+    public void projectChanged(String projekt) {
+        if (!enabled || projekt == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            Snapshot current = snapshot.get();
+            if (current == null) {
+                return;
+            }
+            try (Connection conn = dataSource.getConnection()) {
+                List<Map<String, Object>> projects = queryProjects(conn);
+
+                Map<String, List<Map<String, Object>>> tests = new HashMap<>(current.testsByProject());
+                Set<String> large = new HashSet<>(current.largeProjects());
+                tests.remove(projekt);
+                large.remove(projekt);
+                try (PreparedStatement st = conn.prepareStatement(PROJECT_TESTS_SQL)) {
+                    st.setString(1, projekt);
+                    st.setInt(2, maxTestsPerProject + 1);
+                    try (ResultSet rs = st.executeQuery()) {
+                        List<Map<String, Object>> rows = readRows(rs);
+                        if (rows.size() > maxTestsPerProject) {
+                            large.add(projekt);
+                        } else if (!rows.isEmpty()) {
+                            tests.put(projekt, List.copyOf(rows));
+                        }
+                    }
+                }
+
+                snapshot.set(buildSnapshot(projects, tests, large));
+            } catch (SQLException e) {
+                // Drop the model rather than serve stale data, the next reconcile rebuilds it
+                snapshot.set(null);
+                logger.error("Failed to refresh read model for project {}: {}", projekt, e.getMessage());
+            }
+        }
+    }
+
+    public List<String> activeProjects() {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        for (Map<String, Object> project : current.projects()) {
+            if ((Integer) project.get("arkiverad") == 0) {
+                names.add((String) project.get("namn"));
+            }
+        }
+        return names;
+    }
+
+    public List<Map<String, Object>> projectsWithInfo(boolean includeArchived) {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            return null;
+        }
+        if (includeArchived) {
+            return current.projects();
+        }
+        List<Map<String, Object>> projects = new ArrayList<>();
+        for (Map<String, Object> project : current.projects()) {
+            if ((Integer) project.get("arkiverad") == 0) {
+                projects.add(project);
+            }
+        }
+        return projects;
+    }
+
+    public Map<String, Object> projectInfo(String projekt) {
+        Snapshot current = snapshot.get();
+        return current == null ? null : current.projectsByName().get(projekt);
+    }
+
+    // Tests of an active project; archived projects live in PTLOG_ARKIV and are read from the DB, as are projects
+    // with more tests than the snapshot holds
+    public List<Map<String, Object>> tests(String projekt) {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            return null;
+        }
+        Map<String, Object> project = current.projectsByName().get(projekt);
+        if (project == null || (Integer) project.get("arkiverad") != 0 || current.largeProjects().contains(projekt)) {
+            return null;
+        }
+        return current.testsByProject().getOrDefault(projekt, List.of());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private Snapshot buildSnapshot(List<Map<String, Object>> projects,
+                                   Map<String, List<Map<String, Object>>> tests, Set<String> largeProjects) {
+        Map<String, Map<String, Object>> byName = new HashMap<>();
+        for (Map<String, Object> project : projects) {
+            byName.put((String) project.get("namn"), project);
+        }
+        return new Snapshot(List.copyOf(projects), Map.copyOf(byName), Map.copyOf(tests), Set.copyOf(largeProjects));
+    }
+
+    private List<Map<String, Object>> queryProjects(Connection conn) throws SQLException {
+        List<Map<String, Object>> projects = new ArrayList<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(PROJECTS_SQL)) {
+            while (rs.next()) {
+                Map<String, Object> project = new LinkedHashMap<>();
+                project.put("namn", rs.getString("NAMN"));
+                project.put("beskrivning", rs.getString("BESKRIVNING"));
+                project.put("arkiverad", rs.getInt("ARKIVERAD"));
+                projects.add(Collections.unmodifiableMap(project));
+            }
+        }
+        return projects;
+    }
+
+    private List<Map<String, Object>> readRows(ResultSet rs) throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int colCount = rsmd.getColumnCount();
+        while (rs.next()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 1; i <= colCount; i++) {
+                AnalysCompression.putColumn(row, rs, i, rsmd.getColumnName(i));
+            }
+            rows.add(Collections.unmodifiableMap(row));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,134 @@
+package se.ptlog.results;
+
+import se.ptlog.compression.DeflateCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Response time histogram in the style of HdrHistogram: values below 256 ms are counted exactly, larger values in
+ * log-linear buckets of 128 per power of two, so every percentile is within 0.8% of the recorded value while the
+ * histogram stays a few KB whatever the number of samples. Values are milliseconds.
+ */
+public final class ResponseTimeHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT = SUB_BUCKETS * 2;
+
+    private long[] counts = new long[EXACT];
+    private int highestIndex = -1;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private long sum;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = index(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length + SUB_BUCKETS * 4));
+        }
+        counts[index]++;
+        highestIndex = Math.max(highestIndex, index);
+        total++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long min() {
+        return total == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    // Value at or below which the given percentage of samples fall, reported as the top of its bucket
+    public long percentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        if (percentile <= 0) {
+            return min;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i <= highestIndex; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, highestValue(i)));
+            }
+        }
+        return max;
+    }
+
+    static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return EXACT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long highestValue(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int shift = (index - EXACT) / SUB_BUCKETS + 1;
+        long top = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    // Non-empty buckets as (index gap, count) varint pairs, compressed with DeflateCodec
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Varint.write(out, total);
+        Varint.write(out, min());
+        Varint.write(out, max);
+        Varint.write(out, sum);
+        int previous = -1;
+        for (int i = 0; i <= highestIndex; i++) {
+            if (counts[i] != 0) {
+                Varint.write(out, i - previous);
+                Varint.write(out, counts[i]);
+                previous = i;
+            }
+        }
+        return DeflateCodec.encode(out.toByteArray());
+    }
+
+    public static ResponseTimeHistogram decode(byte[] stored) {
+        ByteBuffer in = ByteBuffer.wrap(DeflateCodec.decode(stored));
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        histogram.total = Varint.read(in);
+        histogram.min = Varint.read(in);
+        histogram.max = Varint.read(in);
+        histogram.sum = Varint.read(in);
+        int index = -1;
+        while (in.hasRemaining()) {
+            index += (int) Varint.read(in);
+            if (index >= histogram.counts.length) {
+                histogram.counts = Arrays.copyOf(histogram.counts, index + 1);
+            }
+            histogram.counts[index] = Varint.read(in);
+            histogram.highestIndex = index;
+        }
+        if (histogram.total == 0) {
+            histogram.min = Long.MAX_VALUE;
+        }
+        return histogram;
+    }
+}
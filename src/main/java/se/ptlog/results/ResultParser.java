@@ -0,0 +1,459 @@
+package se.ptlog.results;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One-pass parser for JMeter CSV result files (JTL) and Gatling simulation.log files of any size.
+ * The file is read through one reused buffer and fields are parsed in place, so a line costs no allocation;
+ * only the first sample of each transaction allocates its name, histogram and series. Memory therefore follows
+ * the number of transactions (at most maxTransactions, later ones are counted as "(other)"), never the file size.
+ */
+public final class ResultParser {
+
+    public enum Format { JTL, GATLING }
+
+    public static final String OTHER = "(other)";
+
+    // A line longer than this (a response body saved into the JTL) is skipped and counted as invalid
+    private static final int MAX_LINE = 1 << 20;
+    private static final int MAX_FIELDS = 64;
+
+    // Column order of a JTL written without header line (JMeter's default CSV fields)
+    private static final List<String> DEFAULT_JTL_COLUMNS = List.of(
+            "timeStamp", "elapsed", "label", "responseCode", "responseMessage", "threadName", "dataType", "success");
+
+    private static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] REQUEST = bytes("REQUEST\t");
+    private static final List<byte[]> GATLING_RECORDS = List.of(bytes("RUN\t"), REQUEST, bytes("USER\t"),
+            bytes("GROUP\t"), bytes("ERROR\t"), bytes("ASSERTION\t"));
+
+    public static final class Transaction {
+        private final String name;
+        private final ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        private final ThroughputSeries series;
+        private long errors;
+
+        Transaction(String name, int seriesBuckets) {
+            this.name = name;
+            this.series = new ThroughputSeries(seriesBuckets);
+        }
+
+        void record(long endMs, long elapsedMs, boolean error) {
+            histogram.record(elapsedMs);
+            series.record(endMs, error);
+            if (error) {
+                errors++;
+            }
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public ResponseTimeHistogram histogram() {
+            return histogram;
+        }
+
+        public ThroughputSeries series() {
+            return series;
+        }
+
+        public long errors() {
+            return errors;
+        }
+    }
+
+    public record Result(Format format, Transaction total, List<Transaction> transactions,
+                         long samples, long invalidLines, long firstStartMs, long lastEndMs) {
+    }
+
+    private final int maxTransactions;
+    private final int seriesBuckets;
+
+    private byte[] buf = new byte[1 << 16];
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    // Quoted fields containing "" are unescaped into this buffer before use
+    private byte[] scratch = new byte[256];
+
+    private Format format;
+    private byte delimiter = ',';
+    private int timeStampColumn = -1;
+    private int elapsedColumn = -1;
+    private int labelColumn = -1;
+    private int successColumn = -1;
+    private int lastColumn;
+
+    // Open addressing table from transaction name bytes to Transaction
+    private byte[][] keys = new byte[64][];
+    private Transaction[] values = new Transaction[64];
+    private final List<Transaction> transactions = new ArrayList<>();
+    private Transaction other;
+    private Transaction total;
+
+    private long samples;
+    private long invalidLines;
+    private long firstStartMs = Long.MAX_VALUE;
+    private long lastEndMs = Long.MIN_VALUE;
+
+    public ResultParser(int maxTransactions, int seriesBuckets) {
+        this.maxTransactions = Math.max(1, maxTransactions);
+        this.seriesBuckets = seriesBuckets;
+    }
+
+    public Result parse(InputStream in, int totalSeriesBuckets) throws IOException {
+        total = new Transaction("", totalSeriesBuckets);
+        int start = 0;
+        int end = 0;
+        int scan = 0;
+        boolean quoted = false;
+        boolean skipping = false;
+        boolean eof = false;
+
+        while (true) {
+            // Find the end of the record; JTL fields may hold quoted line breaks
+            int lineEnd = -1;
+            boolean quotes = format != Format.GATLING;
+            for (; scan < end; scan++) {
+                byte b = buf[scan];
+                if (b == '"' && quotes) {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    lineEnd = scan;
+                    break;
+                }
+            }
+
+            if (lineEnd >= 0) {
+                if (skipping) {
+                    skipping = false;
+                } else {
+                    line(start, lineEnd > start && buf[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd);
+                }
+                start = lineEnd + 1;
+                scan = start;
+                continue;
+            }
+            if (eof) {
+                if (end > start && !skipping) {
+                    line(start, buf[end - 1] == '\r' ? end - 1 : end);
+                }
+                break;
+            }
+
+            // Keep the unfinished record and read more
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                scan -= start;
+                start = 0;
+            }
+            if (end == buf.length) {
+                if (buf.length < MAX_LINE) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                } else {
+                    if (!skipping) {
+                        invalidLines++;
+                    }
+                    skipping = true;
+                    quoted = false;
+                    end = 0;
+                    scan = 0;
+                }
+            }
+            int n = in.read(buf, end, buf.length - end);
+            if (n < 0) {
+                eof = true;
+            } else {
+                end += n;
+            }
+        }
+
+        if (format == null) {
+            throw new IllegalArgumentException("Empty result file");
+        }
+        List<Transaction> result = new ArrayList<>(transactions);
+        if (other != null) {
+            result.add(other);
+        }
+        return new Result(format, total, result, samples, invalidLines,
+                samples == 0 ? 0 : firstStartMs, samples == 0 ? 0 : lastEndMs);
+    }
+
+    private void line(int from, int to) {
+        if (to <= from) {
+            return;
+        }
+        if (format == null && detect(from, to)) {
+            return;
+        }
+        if (format == Format.GATLING) {
+            gatlingLine(from, to);
+        } else {
+            jtlLine(from, to);
+        }
+    }
+
+    // Sets the format from the first line, true if that line is a header and holds no sample
+    private boolean detect(int from, int to) {
+        byte first = buf[from];
+        for (byte[] record : GATLING_RECORDS) {
+            if (startsWith(from, to, record)) {
+                format = Format.GATLING;
+                return false;
+            }
+        }
+        boolean bom = startsWith(from, to, BOM);
+        if (first == '<') {
+            throw new IllegalArgumentException("XML JTL files are not supported, save results as CSV");
+        }
+        // Bytes are signed, so this also catches a first byte of 0x80 or above
+        if (first < '\t' && !bom) {
+            throw new IllegalArgumentException("Not a text result file (Gatling 3.10+ writes a binary " +
+                    "simulation.log, use the JTL or an older text log)");
+        }
+        format = Format.JTL;
+        if (first >= '0' && first <= '9') {
+            // No header line: JMeter's default column order
+            useColumns(DEFAULT_JTL_COLUMNS);
+            return false;
+        }
+
+        // Header line: pick the delimiter it uses and find the columns by name
+        int skip = bom ? BOM.length : 0;
+        String header = new String(buf, from + skip, to - from - skip, StandardCharsets.UTF_8);
+        int commas = header.split(",", -1).length;
+        int tabs = header.split("\t", -1).length;
+        int semicolons = header.split(";", -1).length;
+        delimiter = tabs > commas && tabs >= semicolons ? (byte) '\t' : semicolons > commas ? (byte) ';' : (byte) ',';
+        List<String> columns = new ArrayList<>();
+        for (String column : header.split(delimiter == '\t' ? "\t" : String.valueOf((char) delimiter), -1)) {
+            columns.add(column.trim().replace("\"", ""));
+        }
+        useColumns(columns);
+        if (timeStampColumn < 0 || elapsedColumn < 0 || labelColumn < 0) {
+            throw new IllegalArgumentException("JTL header needs timeStamp, elapsed and label columns: " + header);
+        }
+        return true;
+    }
+
+    private void useColumns(List<String> columns) {
+        timeStampColumn = columns.indexOf("timeStamp");
+        elapsedColumn = columns.indexOf("elapsed");
+        labelColumn = columns.indexOf("label");
+        successColumn = columns.indexOf("success");
+        lastColumn = Math.max(Math.max(timeStampColumn, elapsedColumn), Math.max(labelColumn, successColumn));
+        if (lastColumn >= MAX_FIELDS) {
+            throw new IllegalArgumentException("JTL columns beyond " + MAX_FIELDS + " are not supported");
+        }
+    }
+
+    private void jtlLine(int from, int to) {
+        int fields = splitCsv(from, to);
+        if (fields <= lastColumn) {
+            invalidLines++;
+            return;
+        }
+        long timeStamp = parseLong(timeStampColumn);
+        long elapsed = parseLong(elapsedColumn);
+        if (timeStamp < 0 || elapsed < 0) {
+            invalidLines++;
+            return;
+        }
+        boolean error = false;
+        if (successColumn >= 0) {
+            int s = fieldStart[successColumn];
+            error = fieldEnd[successColumn] == s || (buf[s] != 't' && buf[s] != 'T');
+        }
+        sample(labelColumn, timeStamp, timeStamp + elapsed, error);
+    }
+
+    /**
+     * Gatling 3.x request records: REQUEST, [user id,] group, name, start, end, OK|KO, message. The status is
+     * found by position from the end of the timestamps, which covers the layouts of all 3.x text logs.
+     */
+    private void gatlingLine(int from, int to) {
+        if (!startsWith(from, to, REQUEST)) {
+            return;
+        }
+        int fields = split(from, to, (byte) '\t', false);
+        for (int status = 4; status < fields; status++) {
+            int s = fieldStart[status];
+            if (fieldEnd[status] - s == 2 && (buf[s] == 'O' && buf[s + 1] == 'K' || buf[s] == 'K' && buf[s + 1] == 'O')) {
+                long start = parseLong(status - 2);
+                long end = parseLong(status - 1);
+                if (start >= 0 && end >= start) {
+                    sample(status - 3, start, end, buf[s] == 'K');
+                    return;
+                }
+            }
+        }
+        invalidLines++;
+    }
+
+    private void sample(int nameField, long startMs, long endMs, boolean error) {
+        samples++;
+        firstStartMs = Math.min(firstStartMs, startMs);
+        lastEndMs = Math.max(lastEndMs, endMs);
+        long elapsed = endMs - startMs;
+        total.record(endMs, elapsed, error);
+        transaction(nameField).record(endMs, elapsed, error);
+    }
+
+    private int splitCsv(int from, int to) {
+        return split(from, to, delimiter, true);
+    }
+
+    // Records field boundaries up to the last needed column; quoted fields are returned without their quotes
+    private int split(int from, int to, byte separator, boolean quotes) {
+        int field = 0;
+        int pos = from;
+        int limit = format == Format.GATLING ? MAX_FIELDS - 1 : lastColumn;
+        while (field <= limit) {
+            if (quotes && pos < to && buf[pos] == '"') {
+                int contentStart = pos + 1;
+                int p = contentStart;
+                boolean escaped = false;
+                while (p < to) {
+                    if (buf[p] == '"') {
+                        if (p + 1 < to && buf[p + 1] == '"') {
+                            escaped = true;
+                            p += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    p++;
+                }
+                fieldStart[field] = contentStart;
+                fieldEnd[field] = escaped ? -p : p;
+                pos = p + 1;
+                while (pos < to && buf[pos] != separator) {
+                    pos++;
+                }
+            } else {
+                int p = pos;
+                while (p < to && buf[p] != separator) {
+                    p++;
+                }
+                fieldStart[field] = pos;
+                fieldEnd[field] = p;
+                pos = p;
+            }
+            field++;
+            if (pos >= to) {
+                break;
+            }
+            pos++;
+        }
+        // A negative end marks a quoted field with "" escapes, unescaped when it is a name
+        return field;
+    }
+
+    private long parseLong(int field) {
+        int s = fieldStart[field];
+        int e = Math.abs(fieldEnd[field]);
+        if (s >= e) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = s; i < e; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private Transaction transaction(int field) {
+        byte[] source = buf;
+        int from = fieldStart[field];
+        int to = fieldEnd[field];
+        if (to < 0) {
+            to = unescape(from, -to);
+            source = scratch;
+            from = 0;
+        }
+
+        int hash = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ source[i]) * 0x01000193;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            byte[] key = keys[slot];
+            if (key == null) {
+                if (transactions.size() >= maxTransactions) {
+                    if (other == null) {
+                        other = new Transaction(OTHER, seriesBuckets);
+                    }
+                    return other;
+                }
+                Transaction transaction = new Transaction(new String(source, from, to - from, StandardCharsets.UTF_8),
+                        seriesBuckets);
+                keys[slot] = Arrays.copyOfRange(source, from, to);
+                values[slot] = transaction;
+                transactions.add(transaction);
+                if (transactions.size() * 2 > keys.length) {
+                    grow();
+                }
+                return transaction;
+            }
+            if (Arrays.equals(key, 0, key.length, source, from, to)) {
+                return values[slot];
+            }
+        }
+    }
+
+    private int unescape(int from, int to) {
+        if (scratch.length < to - from) {
+            scratch = new byte[to - from];
+        }
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            scratch[n++] = buf[i];
+            if (buf[i] == '"') {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        Transaction[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        values = new Transaction[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            byte[] key = oldKeys[i];
+            if (key != null) {
+                int hash = 0x811C9DC5;
+                for (byte b : key) {
+                    hash = (hash ^ b) * 0x01000193;
+                }
+                int slot = hash & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private boolean startsWith(int from, int to, byte[] prefix) {
+        return to - from >= prefix.length && Arrays.equals(buf, from, from + prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
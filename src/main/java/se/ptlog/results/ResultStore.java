@@ -0,0 +1,375 @@
+package se.ptlog.results;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Load test results attached to a test: an uploaded JTL or simulation.log is summarized while it streams in and
+ * only the encoded histograms and throughput series are stored, in PTLOG_RESULTAT (whole test) and
+ * PTLOG_RESULTAT_TRANSAKTION (per transaction). Percentiles and time series are computed from those on request.
+ */
+@Component
+public class ResultStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResultStore.class);
+
+    private static final String IDS_FOR_TEST =
+            "SELECT ID FROM PTLOG WHERE PROJEKT = ? AND TESTNAMN = ? " +
+            "UNION ALL SELECT ID FROM PTLOG_ARKIV WHERE PROJEKT = ? AND TESTNAMN = ?";
+
+    public static final double[] SUMMARY_PERCENTILES = {50, 90, 95, 99};
+
+    // Column sizes in characters (VARCHAR2(n CHAR) on Oracle, so å/ä/ö don't count as two bytes)
+    private static final int MAX_NAME_LENGTH = 1000;
+    private static final int MAX_FILE_NAME_LENGTH = 255;
+
+    private final DataSource dataSource;
+    private final DataSource readDataSource;
+    private final int maxTransactions;
+    private final int seriesBuckets;
+    private final int totalSeriesBuckets;
+
+    public ResultStore(DataSource dataSource,
+                       @Qualifier("readDataSource") DataSource readDataSource,
+                       @Value("${results.max-transactions:1000}") int maxTransactions,
+                       @Value("${results.series-buckets:720}") int seriesBuckets,
+                       @Value("${results.total-series-buckets:3600}") int totalSeriesBuckets) {
+        this.dataSource = dataSource;
+        this.readDataSource = readDataSource;
+        this.maxTransactions = maxTransactions;
+        this.seriesBuckets = seriesBuckets;
+        this.totalSeriesBuckets = totalSeriesBuckets;
+    }
+
+    /**
+     * The PTLOG ID results are attached to: id if it is one of the test's rows, otherwise the oldest row with the
+     * test's name. Null if there is no such test.
+     */
+    public Long testId(String projekt, String testnamn, Long id) throws SQLException {
+        try (Connection conn = readDataSource.getConnection();
+             PreparedStatement st = conn.prepareStatement("SELECT MIN(ID) AS ID FROM (" + IDS_FOR_TEST + ") t" +
+                     (id != null ? " WHERE ID = ?" : ""))) {
+            bindTest(st, 1, projekt, testnamn);
+            if (id != null) {
+                st.setLong(5, id);
+            }
+            try (ResultSet rs = st.executeQuery()) {
+                if (rs.next()) {
+                    long found = rs.getLong("ID");
+                    return rs.wasNull() ? null : found;
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Parses the upload (gzip compressed or not) in one pass and stores its summary. Null if the test was deleted
+     * or its project deleted while the file was parsed, nothing is stored then.
+     */
+    public Map<String, Object> upload(long ptlogId, String projekt, String filnamn, InputStream body)
+            throws IOException, SQLException {
+        InputStream in = decompressed(body);
+        long started = System.nanoTime();
+        ResultParser.Result result = new ResultParser(maxTransactions, seriesBuckets).parse(in, totalSeriesBuckets);
+        long parseMillis = (System.nanoTime() - started) / 1_000_000;
+        if (result.samples() == 0) {
+            throw new IllegalArgumentException("No samples found in the result file");
+        }
+
+        long resultatId;
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (!lockTest(conn, ptlogId, projekt)) {
+                    conn.rollback();
+                    logger.info("Test {} of project {} was deleted during the upload, result discarded",
+                            ptlogId, projekt);
+                    return null;
+                }
+                try (PreparedStatement st = conn.prepareStatement(
+                        "INSERT INTO PTLOG_RESULTAT (PTLOG_ID, PROJEKT, FORMAT, FILNAMN, DATUM, STARTTID, SLUTTID, " +
+                        "ANTAL, FEL, OGILTIGA, HISTOGRAM, TIDSSERIE) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                        new String[]{"ID"})) {
+                    st.setLong(1, ptlogId);
+                    st.setString(2, projekt);
+                    st.setString(3, result.format().name());
+                    st.setString(4, truncate(filnamn, MAX_FILE_NAME_LENGTH));
+                    st.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+                    st.setTimestamp(6, new Timestamp(result.firstStartMs()));
+                    st.setTimestamp(7, new Timestamp(result.lastEndMs()));
+                    st.setLong(8, result.samples());
+                    st.setLong(9, result.total().errors());
+                    st.setLong(10, result.invalidLines());
+                    st.setBytes(11, result.total().histogram().encode());
+                    st.setBytes(12, result.total().series().encode());
+                    st.executeUpdate();
+                    try (ResultSet keys = st.getGeneratedKeys()) {
+                        keys.next();
+                        resultatId = keys.getLong(1);
+                    }
+                }
+                try (PreparedStatement st = conn.prepareStatement(
+                        "INSERT INTO PTLOG_RESULTAT_TRANSAKTION (RESULTAT_ID, TRANSAKTION, ANTAL, FEL, HISTOGRAM, " +
+                        "TIDSSERIE) VALUES (?, ?, ?, ?, ?, ?)")) {
+                    for (ResultParser.Transaction transaction : result.transactions()) {
+                        st.setLong(1, resultatId);
+                        st.setString(2, truncate(transaction.name(), MAX_NAME_LENGTH));
+                        st.setLong(3, transaction.histogram().count());
+                        st.setLong(4, transaction.errors());
+                        st.setBytes(5, transaction.histogram().encode());
+                        st.setBytes(6, transaction.series().encode());
+                        st.addBatch();
+                    }
+                    st.executeBatch();
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+
+        logger.info("Stored {} result {} for test {}: {} samples in {} transaction(s), parsed in {} ms",
+                result.format(), resultatId, ptlogId, result.samples(), result.transactions().size(), parseMillis);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("resultatId", resultatId);
+        summary.put("format", result.format().name());
+        summary.put("samples", result.samples());
+        summary.put("errors", result.total().errors());
+        summary.put("invalidLines", result.invalidLines());
+        summary.put("transactions", result.transactions().size());
+        summary.put("start", Instant.ofEpochMilli(result.firstStartMs()).toString());
+        summary.put("end", Instant.ofEpochMilli(result.lastEndMs()).toString());
+        summary.put("parseMs", parseMillis);
+        return summary;
+    }
+
+    // Gzip is recognized by its magic bytes, whatever the request's Content-Encoding says
+    static InputStream decompressed(InputStream body) throws IOException {
+        InputStream in = new BufferedInputStream(body, 1 << 16);
+        in.mark(2);
+        boolean gzip = in.read() == 0x1F && in.read() == 0x8B;
+        in.reset();
+        return gzip ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    // Locks the project row like an insert does, then the test row, so a delete of either waits for the upload
+    // to commit (and removes its result) or has already removed the row
+    private static boolean lockTest(Connection conn, long ptlogId, String projekt) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement(
+                "SELECT RADERAD FROM PTLOG_PROJEKT WHERE NAMN = ? FOR UPDATE")) {
+            st.setString(1, projekt);
+            try (ResultSet rs = st.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) == 1) {
+                    return false;
+                }
+            }
+        }
+        for (String table : List.of("PTLOG", "PTLOG_ARKIV")) {
+            try (PreparedStatement st = conn.prepareStatement(
+                    "SELECT ID FROM " + table + " WHERE ID = ? AND PROJEKT = ? FOR UPDATE")) {
+                st.setLong(1, ptlogId);
+                st.setString(2, projekt);
+                try (ResultSet rs = st.executeQuery()) {
+                    if (rs.next()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Uploads of a test, newest first, each with its totals and a summary per transaction
+    public List<Map<String, Object>> results(String projekt, String testnamn) throws SQLException {
+        List<Map<String, Object>> uploads = new ArrayList<>();
+        try (Connection conn = readDataSource.getConnection()) {
+            try (PreparedStatement st = conn.prepareStatement(
+                    "SELECT ID, PTLOG_ID, FORMAT, FILNAMN, DATUM, STARTTID, SLUTTID, ANTAL, FEL, OGILTIGA, HISTOGRAM " +
+                    "FROM PTLOG_RESULTAT WHERE PTLOG_ID IN (" + IDS_FOR_TEST + ") ORDER BY ID DESC")) {
+                bindTest(st, 1, projekt, testnamn);
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        long start = rs.getTimestamp("STARTTID").getTime();
+                        long end = rs.getTimestamp("SLUTTID").getTime();
+                        Map<String, Object> upload = new LinkedHashMap<>();
+                        upload.put("resultatId", rs.getLong("ID"));
+                        upload.put("ID", rs.getLong("PTLOG_ID"));
+                        upload.put("format", rs.getString("FORMAT"));
+                        upload.put("filnamn", rs.getString("FILNAMN"));
+                        upload.put("uploaded", rs.getTimestamp("DATUM").toInstant().toString());
+                        upload.put("start", Instant.ofEpochMilli(start).toString());
+                        upload.put("end", Instant.ofEpochMilli(end).toString());
+                        upload.put("invalidLines", rs.getLong("OGILTIGA"));
+                        upload.put("total", summary(null, rs.getLong("FEL"),
+                                ResponseTimeHistogram.decode(rs.getBytes("HISTOGRAM")), end - start));
+                        upload.put("durationMs", end - start);
+                        uploads.add(upload);
+                    }
+                }
+            }
+            try (PreparedStatement st = conn.prepareStatement(
+                    "SELECT TRANSAKTION, FEL, HISTOGRAM FROM PTLOG_RESULTAT_TRANSAKTION WHERE RESULTAT_ID = ? " +
+                    "ORDER BY TRANSAKTION")) {
+                for (Map<String, Object> upload : uploads) {
+                    st.setLong(1, (Long) upload.get("resultatId"));
+                    long duration = (Long) upload.remove("durationMs");
+                    List<Map<String, Object>> transactions = new ArrayList<>();
+                    try (ResultSet rs = st.executeQuery()) {
+                        while (rs.next()) {
+                            transactions.add(summary(rs.getString("TRANSAKTION"), rs.getLong("FEL"),
+                                    ResponseTimeHistogram.decode(rs.getBytes("HISTOGRAM")), duration));
+                        }
+                    }
+                    upload.put("transactions", transactions);
+                }
+            }
+        }
+        return uploads;
+    }
+
+    // Percentiles of one transaction, or of the whole test when transaktion is null. Null if unknown.
+    public Map<String, Object> percentiles(long resultatId, String transaktion, double[] percentiles)
+            throws SQLException {
+        byte[] stored = load(resultatId, transaktion, "HISTOGRAM");
+        if (stored == null) {
+            return null;
+        }
+        ResponseTimeHistogram histogram = ResponseTimeHistogram.decode(stored);
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (double percentile : percentiles) {
+            values.put(label(percentile), histogram.percentile(percentile));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("resultatId", resultatId);
+        response.put("transaktion", transaktion);
+        response.put("samples", histogram.count());
+        response.put("percentilesMs", values);
+        return response;
+    }
+
+    // Samples, errors and throughput over time, of one transaction or the whole test. Null if unknown.
+    public Map<String, Object> timeline(long resultatId, String transaktion) throws SQLException {
+        byte[] stored = load(resultatId, transaktion, "TIDSSERIE");
+        if (stored == null) {
+            return null;
+        }
+        ThroughputSeries series = ThroughputSeries.decode(stored);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("resultatId", resultatId);
+        response.put("transaktion", transaktion);
+        response.put("stepMs", series.stepMs());
+        response.put("points", series.points());
+        return response;
+    }
+
+    public int delete(long resultatId) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement st = conn.prepareStatement(
+                        "DELETE FROM PTLOG_RESULTAT_TRANSAKTION WHERE RESULTAT_ID = ?")) {
+                    st.setLong(1, resultatId);
+                    st.executeUpdate();
+                }
+                int rows;
+                try (PreparedStatement st = conn.prepareStatement("DELETE FROM PTLOG_RESULTAT WHERE ID = ?")) {
+                    st.setLong(1, resultatId);
+                    rows = st.executeUpdate();
+                }
+                conn.commit();
+                return rows;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Removes the results of the test's rows in PTLOG and PTLOG_ARKIV, on the caller's connection
+    public int deleteForTest(Connection conn, String projekt, String testnamn) throws SQLException {
+        try (PreparedStatement transactions = conn.prepareStatement(
+                "DELETE FROM PTLOG_RESULTAT_TRANSAKTION WHERE RESULTAT_ID IN " +
+                "(SELECT ID FROM PTLOG_RESULTAT WHERE PTLOG_ID IN (" + IDS_FOR_TEST + "))");
+             PreparedStatement results = conn.prepareStatement(
+                "DELETE FROM PTLOG_RESULTAT WHERE PTLOG_ID IN (" + IDS_FOR_TEST + ")")) {
+            bindTest(transactions, 1, projekt, testnamn);
+            transactions.executeUpdate();
+            bindTest(results, 1, projekt, testnamn);
+            return results.executeUpdate();
+        }
+    }
+
+    private byte[] load(long resultatId, String transaktion, String column) throws SQLException {
+        String sql = transaktion == null
+                ? "SELECT " + column + " FROM PTLOG_RESULTAT WHERE ID = ?"
+                : "SELECT " + column + " FROM PTLOG_RESULTAT_TRANSAKTION WHERE RESULTAT_ID = ? AND TRANSAKTION = ?";
+        try (Connection conn = readDataSource.getConnection();
+             PreparedStatement st = conn.prepareStatement(sql)) {
+            st.setLong(1, resultatId);
+            if (transaktion != null) {
+                st.setString(2, transaktion);
+            }
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() ? rs.getBytes(1) : null;
+            }
+        }
+    }
+
+    private static Map<String, Object> summary(String name, long errors, ResponseTimeHistogram histogram,
+                                               long durationMs) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        if (name != null) {
+            summary.put("transaktion", name);
+        }
+        long samples = histogram.count();
+        summary.put("samples", samples);
+        summary.put("errors", errors);
+        summary.put("errorPercent", samples == 0 ? 0.0 : Math.round(errors * 10_000.0 / samples) / 100.0);
+        summary.put("perSecond", durationMs <= 0 ? 0.0 : Math.round(samples * 100_000.0 / durationMs) / 100.0);
+        summary.put("minMs", histogram.min());
+        summary.put("meanMs", Math.round(histogram.mean() * 10) / 10.0);
+        for (double percentile : SUMMARY_PERCENTILES) {
+            summary.put("p" + label(percentile) + "Ms", histogram.percentile(percentile));
+        }
+        summary.put("maxMs", histogram.max());
+        return summary;
+    }
+
+    private static String label(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    // Never splits a surrogate pair, half of one can't be stored
+    static String truncate(String value, int maxLength) {
+        if (value == null || value.length() <= maxLength) {
+            return value;
+        }
+        int end = Character.isHighSurrogate(value.charAt(maxLength - 1)) ? maxLength - 1 : maxLength;
+        return value.substring(0, end);
+    }
+
+    private static void bindTest(PreparedStatement st, int index, String projekt, String testnamn) throws SQLException {
+        st.setString(index, projekt);
+        st.setString(index + 1, testnamn);
+        st.setString(index + 2, projekt);
+        st.setString(index + 3, testnamn);
+    }
+}
@@ -0,0 +1,110 @@
+package se.ptlog.results;
+
+import se.ptlog.compression.DeflateCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples and errors per time step, by completion time. The series starts at one-second steps and doubles the
+ * step (merging neighbouring buckets) whenever the test outlasts maxBuckets steps, so memory is bounded whatever
+ * the length of the test. Samples completing before the first one seen are counted in the first bucket.
+ */
+public final class ThroughputSeries {
+
+    private static final long INITIAL_STEP_MS = 1000;
+
+    private final long[] samples;
+    private final long[] errors;
+    private long originMs = -1;
+    private long stepMs = INITIAL_STEP_MS;
+    private int used;
+
+    public ThroughputSeries(int maxBuckets) {
+        samples = new long[Math.max(2, maxBuckets & ~1)];
+        errors = new long[samples.length];
+    }
+
+    public void record(long timeMs, boolean error) {
+        if (originMs < 0) {
+            originMs = timeMs - timeMs % INITIAL_STEP_MS;
+        }
+        long bucket = Math.max(0, (timeMs - originMs) / stepMs);
+        while (bucket >= samples.length) {
+            halve();
+            bucket = (timeMs - originMs) / stepMs;
+        }
+        int index = (int) bucket;
+        samples[index]++;
+        if (error) {
+            errors[index]++;
+        }
+        used = Math.max(used, index + 1);
+    }
+
+    private void halve() {
+        for (int i = 0; i < samples.length / 2; i++) {
+            samples[i] = samples[2 * i] + samples[2 * i + 1];
+            errors[i] = errors[2 * i] + errors[2 * i + 1];
+        }
+        for (int i = samples.length / 2; i < samples.length; i++) {
+            samples[i] = 0;
+            errors[i] = 0;
+        }
+        used = (used + 1) / 2;
+        stepMs *= 2;
+    }
+
+    public long originMs() {
+        return originMs;
+    }
+
+    public long stepMs() {
+        return stepMs;
+    }
+
+    public List<Map<String, Object>> points() {
+        List<Map<String, Object>> points = new ArrayList<>(used);
+        for (int i = 0; i < used; i++) {
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("time", originMs + i * stepMs);
+            point.put("samples", samples[i]);
+            point.put("errors", errors[i]);
+            point.put("perSecond", Math.round(samples[i] * 100_000.0 / stepMs) / 100.0);
+            points.add(point);
+        }
+        return points;
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Varint.write(out, Math.max(0, originMs));
+        Varint.write(out, stepMs);
+        Varint.write(out, used);
+        for (int i = 0; i < used; i++) {
+            Varint.write(out, samples[i]);
+            Varint.write(out, errors[i]);
+        }
+        return DeflateCodec.encode(out.toByteArray());
+    }
+
+    public static ThroughputSeries decode(byte[] stored) {
+        ByteBuffer in = ByteBuffer.wrap(DeflateCodec.decode(stored));
+        long originMs = Varint.read(in);
+        long stepMs = Varint.read(in);
+        int used = (int) Varint.read(in);
+        ThroughputSeries series = new ThroughputSeries(used + 1);
+        series.originMs = originMs;
+        series.stepMs = stepMs;
+        series.used = used;
+        for (int i = 0; i < used; i++) {
+            series.samples[i] = Varint.read(in);
+            series.errors[i] = Varint.read(in);
+        }
+        return series;
+    }
+}
@@ -0,0 +1,30 @@
+package se.ptlog.results;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+// Unsigned LEB128, the integer encoding of the stored histograms and time series
+final class Varint {
+
+    private Varint() {
+    }
+
+    static void write(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long read(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package se.ptlog.trace;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Attributes the SQL a request runs to that request while tracing is enabled
+@Component
+public class SqlTraceFilter extends OncePerRequestFilter {
+
+    private final SqlTracer tracer;
+
+    public SqlTraceFilter(SqlTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!tracer.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String query = request.getQueryString();
+        tracer.beginRequest(request.getMethod() + " " + request.getRequestURI() + (query != null ? "?" + query : ""));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            tracer.endRequest();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package se.ptlog.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * SQL tracing for "PT-Log was slow" questions. When enabled, every statement run through a traced DataSource is
+ * attributed to the HTTP request that ran it (connection wait, execution and fetch time, binds, rows, LOB bytes).
+ * Statements slower than the threshold are kept in a fixed-size lock-free ring buffer shown at /sqltrace.
+ * When disabled, the traced DataSources hand out the pool's connections unwrapped and this costs one volatile read.
+ */
+@Component
+public class SqlTracer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlTracer.class);
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    private final AtomicReferenceArray<SlowStatement> slow;
+    private final AtomicLong slowSequence = new AtomicLong();
+    private final AtomicLong requestSequence = new AtomicLong();
+    private volatile boolean enabled;
+    private volatile long thresholdNanos;
+
+    public SqlTracer(@Value("${sql.trace.enabled:false}") boolean enabled,
+                     @Value("${sql.trace.slow-threshold-ms:200}") long thresholdMs,
+                     @Value("${sql.trace.buffer-size:256}") int bufferSize) {
+        this.enabled = enabled;
+        this.thresholdNanos = thresholdMs * 1_000_000L;
+        this.slow = new AtomicReferenceArray<>(Math.max(1, bufferSize));
+    }
+
+    public DataSource wrap(DataSource dataSource, String name) {
+        return new TracingDataSource(dataSource, name, this);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        logger.info("SQL tracing {}", enabled ? "enabled" : "disabled");
+    }
+
+    public long getThresholdMs() {
+        return thresholdNanos / 1_000_000L;
+    }
+
+    public void setThresholdMs(long thresholdMs) {
+        this.thresholdNanos = thresholdMs * 1_000_000L;
+    }
+
+    // Called by SqlTraceFilter around every HTTP request while tracing is enabled
+    void beginRequest(String request) {
+        CURRENT.set(new RequestTrace(requestSequence.incrementAndGet(), request));
+    }
+
+    void endRequest() {
+        RequestTrace trace = CURRENT.get();
+        CURRENT.remove();
+        if (trace != null && trace.statements > 0 && logger.isDebugEnabled()) {
+            logger.debug("{} #{}: {} statement(s), connection wait {} ms, execute {} ms, fetch {} ms, {} row(s), {} LOB byte(s)",
+                    trace.request, trace.id, trace.statements, millis(trace.connectionWaitNanos),
+                    millis(trace.executeNanos), millis(trace.fetchNanos), trace.rows, trace.lobBytes);
+        }
+    }
+
+    void connectionAcquired(long waitNanos) {
+        RequestTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.connectionWaitNanos += waitNanos;
+        }
+    }
+
+    void statementFinished(String pool, String sql, int binds, int batches, long connectionWaitNanos,
+                           long executeNanos, long fetchNanos, long rows, long lobBytes) {
+        RequestTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.statements++;
+            trace.executeNanos += executeNanos;
+            trace.fetchNanos += fetchNanos;
+            trace.rows += rows;
+            trace.lobBytes += lobBytes;
+        }
+        if (executeNanos + fetchNanos < thresholdNanos) {
+            return;
+        }
+        long sequence = slowSequence.getAndIncrement();
+        slow.set((int) (sequence % slow.length()), new SlowStatement(sequence, Instant.now(),
+                trace != null ? trace.request : "background (" + Thread.currentThread().getName() + ")",
+                trace != null ? trace.id : 0, trace != null ? trace.statements : 0, pool, sql, binds, batches,
+                millis(connectionWaitNanos), millis(executeNanos), millis(fetchNanos), rows, lobBytes));
+    }
+
+    // Newest first; slots overwritten while reading are skipped
+    public Map<String, Object> report() {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        long newest = slowSequence.get() - 1;
+        for (long sequence = newest; sequence >= 0 && sequence > newest - slow.length(); sequence--) {
+            SlowStatement entry = slow.get((int) (sequence % slow.length()));
+            if (entry != null && entry.sequence() == sequence) {
+                entries.add(entry.toMap());
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("enabled", enabled);
+        report.put("slowThresholdMs", getThresholdMs());
+        report.put("bufferSize", slow.length());
+        report.put("slowStatementsRecorded", slowSequence.get());
+        report.put("slowStatements", entries);
+        return report;
+    }
+
+    public void clear() {
+        for (int i = 0; i < slow.length(); i++) {
+            slow.set(i, null);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    // Confined to the request thread
+    private static final class RequestTrace {
+        final long id;
+        final String request;
+        int statements;
+        long connectionWaitNanos;
+        long executeNanos;
+        long fetchNanos;
+        long rows;
+        long lobBytes;
+
+        RequestTrace(long id, String request) {
+            this.id = id;
+            this.request = request;
+        }
+    }
+
+    private record SlowStatement(long sequence, Instant at, String request, long requestId, int statementInRequest,
+                                 String pool, String sql, int binds, int batches, double connectionWaitMs,
+                                 double executeMs, double fetchMs, long rows, long lobBytes) {
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("at", at.toString());
+            map.put("request", request);
+            map.put("requestId", requestId);
+            map.put("statementInRequest", statementInRequest);
+            map.put("pool", pool);
+            map.put("sql", sql);
+            map.put("binds", binds);
+            map.put("batches", batches);
+            map.put("connectionWaitMs", connectionWaitMs);
+            map.put("executeMs", executeMs);
+            map.put("fetchMs", fetchMs);
+            map.put("rows", rows);
+            map.put("lobBytes", lobBytes);
+            return map;
+        }
+    }
+}
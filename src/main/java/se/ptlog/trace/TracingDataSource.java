@@ -0,0 +1,260 @@
+package se.ptlog.trace;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * DataSource that, while tracing is enabled, returns connections whose statements and result sets report to
+ * SqlTracer. Java proxies keep this independent of the JDBC driver; unwrap() still reaches the pool.
+ */
+class TracingDataSource extends DelegatingDataSource {
+
+    private final String name;
+    private final SqlTracer tracer;
+
+    TracingDataSource(DataSource target, String name, SqlTracer tracer) {
+        super(target);
+        this.name = name;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!tracer.isEnabled()) {
+            return obtainTargetDataSource().getConnection();
+        }
+        long started = System.nanoTime();
+        Connection connection = obtainTargetDataSource().getConnection();
+        return traced(connection, System.nanoTime() - started);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (!tracer.isEnabled()) {
+            return obtainTargetDataSource().getConnection(username, password);
+        }
+        long started = System.nanoTime();
+        Connection connection = obtainTargetDataSource().getConnection(username, password);
+        return traced(connection, System.nanoTime() - started);
+    }
+
+    private Connection traced(Connection connection, long waitNanos) {
+        tracer.connectionAcquired(waitNanos);
+        return proxy(Connection.class, new ConnectionHandler(connection, waitNanos));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(TracingDataSource.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private long waitNanos;
+
+        ConnectionHandler(Connection target, long waitNanos) {
+            this.target = target;
+            this.waitNanos = waitNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = TracingDataSource.invoke(target, method, args);
+            switch (method.getName()) {
+                case "prepareStatement" -> {
+                    return proxy(PreparedStatement.class, new StatementHandler((Statement) result, (String) args[0], this));
+                }
+                case "prepareCall" -> {
+                    return proxy(CallableStatement.class, new StatementHandler((Statement) result, (String) args[0], this));
+                }
+                case "createStatement" -> {
+                    return proxy(Statement.class, new StatementHandler((Statement) result, null, this));
+                }
+                default -> {
+                    return result;
+                }
+            }
+        }
+
+        // The wait for the connection is reported with its first statement only
+        long takeWaitNanos() {
+            long wait = waitNanos;
+            waitNanos = 0;
+            return wait;
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final ConnectionHandler connection;
+        private final BitSet binds = new BitSet();
+        private String sql;
+        private int batches;
+        private ResultSetHandler open;
+
+        StatementHandler(Statement target, String sql, ConnectionHandler connection) {
+            this.target = target;
+            this.sql = sql;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            if (methodName.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                binds.set(index);
+                return TracingDataSource.invoke(target, method, args);
+            }
+            switch (methodName) {
+                case "clearParameters" -> binds.clear();
+                case "addBatch" -> batches++;
+                case "close" -> finishOpenResultSet();
+                case "getResultSet" -> {
+                    ResultSet resultSet = (ResultSet) TracingDataSource.invoke(target, method, args);
+                    return resultSet == null || open == null ? resultSet : open.wrap(resultSet);
+                }
+                default -> {
+                    if (methodName.startsWith("execute")) {
+                        return execute(method, args);
+                    }
+                }
+            }
+            return TracingDataSource.invoke(target, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            if (args != null && args.length > 0 && args[0] instanceof String statementSql) {
+                sql = statementSql;
+            }
+            finishOpenResultSet();
+            long started = System.nanoTime();
+            Object result;
+            try {
+                result = TracingDataSource.invoke(target, method, args);
+            } catch (Throwable e) {
+                finish(System.nanoTime() - started, 0, -1, 0);
+                throw e;
+            }
+            long executeNanos = System.nanoTime() - started;
+
+            if (result instanceof ResultSet resultSet) {
+                open = new ResultSetHandler(this, executeNanos);
+                return open.wrap(resultSet);
+            }
+            if (result instanceof Boolean isResultSet && isResultSet) {
+                // Rows are counted when the caller fetches getResultSet()
+                open = new ResultSetHandler(this, executeNanos);
+                return result;
+            }
+            long rows = switch (result) {
+                case Integer count -> count;
+                case Long count -> count;
+                case int[] counts -> Arrays.stream(counts).filter(c -> c > 0).asLongStream().sum();
+                case long[] counts -> Arrays.stream(counts).filter(c -> c > 0).sum();
+                default -> target.getUpdateCount();
+            };
+            finish(executeNanos, 0, rows, 0);
+            return result;
+        }
+
+        private void finishOpenResultSet() {
+            if (open != null) {
+                open.finish();
+            }
+        }
+
+        void finish(long executeNanos, long fetchNanos, long rows, long lobBytes) {
+            tracer.statementFinished(name, sql, binds.cardinality(), batches, connection.takeWaitNanos(),
+                    executeNanos, fetchNanos, rows, lobBytes);
+            batches = 0;
+            open = null;
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final StatementHandler statement;
+        private final long executeNanos;
+        private final long fetchStarted = System.nanoTime();
+        private ResultSet target;
+        private BitSet lobColumns;
+        private long rows;
+        private long lobBytes;
+        private boolean finished;
+
+        ResultSetHandler(StatementHandler statement, long executeNanos) {
+            this.statement = statement;
+            this.executeNanos = executeNanos;
+        }
+
+        ResultSet wrap(ResultSet resultSet) {
+            this.target = resultSet;
+            return proxy(ResultSet.class, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = TracingDataSource.invoke(target, method, args);
+            String methodName = method.getName();
+            if ("next".equals(methodName)) {
+                if ((Boolean) result) {
+                    rows++;
+                }
+            } else if ("close".equals(methodName)) {
+                finish();
+            } else if (methodName.startsWith("get") && args != null && args.length >= 1 && result != null) {
+                countLob(args[0], result);
+            }
+            return result;
+        }
+
+        // LOB columns count bytes for BLOBs and characters for CLOBs, however the caller reads them
+        private void countLob(Object column, Object value) throws SQLException {
+            if (value instanceof Clob clob) {
+                lobBytes += clob.length();
+            } else if (value instanceof Blob blob) {
+                lobBytes += blob.length();
+            } else if ((value instanceof String || value instanceof byte[]) && isLobColumn(column)) {
+                lobBytes += value instanceof String text ? text.length() : ((byte[]) value).length;
+            }
+        }
+
+        private boolean isLobColumn(Object column) throws SQLException {
+            if (lobColumns == null) {
+                lobColumns = new BitSet();
+                ResultSetMetaData metaData = target.getMetaData();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    int type = metaData.getColumnType(i);
+                    if (type == Types.CLOB || type == Types.NCLOB || type == Types.BLOB) {
+                        lobColumns.set(i);
+                    }
+                }
+            }
+            int index = column instanceof Integer i ? i
+                    : column instanceof String label ? target.findColumn(label) : 0;
+            return lobColumns.get(index);
+        }
+
+        void finish() {
+            if (!finished) {
+                finished = true;
+                statement.finish(executeNanos, System.nanoTime() - fetchStarted, rows, lobBytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+-- H2 Archive Schema for PT-Log
+-- Tests belonging to archived projects are moved here so PTLOG and its indexes only hold active data
+
+-- Create PTLOG_ARKIV table (same columns as PTLOG, IDs are preserved when moving rows)
+CREATE TABLE PTLOG_ARKIV (
+    ID BIGINT PRIMARY KEY,
+    DATUM TIMESTAMP NOT NULL,
+    TYP VARCHAR(50) NOT NULL,
+    TESTNAMN VARCHAR(255) NOT NULL,
+    SYFTE VARCHAR(1000),
+    ANALYS CLOB,
+    ANALYS_KOMPRIMERAD BLOB,
+    PROJEKT VARCHAR(255) NOT NULL,
+    TESTARE VARCHAR(255),
+    MARKERA INTEGER DEFAULT 0 NOT NULL CHECK (MARKERA IN (0, 1))
+);
+
+-- Add foreign key constraint
+ALTER TABLE PTLOG_ARKIV ADD CONSTRAINT FK_ARKIV_PROJEKT
+    FOREIGN KEY (PROJEKT) REFERENCES PTLOG_PROJEKT(NAMN) ON DELETE CASCADE;
+
+-- Archived data is only read per project
+CREATE INDEX IDX_PTLOG_ARKIV_PROJEKT ON PTLOG_ARKIV(PROJEKT);
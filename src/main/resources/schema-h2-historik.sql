@@ -0,0 +1,21 @@
+-- H2 Edit History Schema for PT-Log
+-- Every edit of ANALYS or SYFTE is kept as a compressed delta against the previous version,
+-- with a full snapshot every few versions so rebuilding an old version stays cheap
+
+-- PTLOG_ID refers to PTLOG or PTLOG_ARKIV (IDs are preserved when rows move), so there is no foreign key
+CREATE TABLE PTLOG_HISTORIK (
+    ID BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    PTLOG_ID BIGINT NOT NULL,
+    PROJEKT VARCHAR(255) NOT NULL,
+    FALT VARCHAR(20) NOT NULL,
+    VERSION INTEGER NOT NULL,
+    DATUM TIMESTAMP NOT NULL,
+    SNAPSHOT INTEGER DEFAULT 0 NOT NULL CHECK (SNAPSHOT IN (0, 1)),
+    LANGD INTEGER NOT NULL,
+    CHECKSUM BIGINT NOT NULL,
+    STORLEK INTEGER NOT NULL,
+    DATA BLOB NOT NULL
+);
+
+CREATE UNIQUE INDEX IDX_HISTORIK_VERSION ON PTLOG_HISTORIK(PTLOG_ID, FALT, VERSION);
+CREATE INDEX IDX_HISTORIK_PROJEKT ON PTLOG_HISTORIK(PROJEKT);
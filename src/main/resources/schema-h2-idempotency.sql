@@ -0,0 +1,12 @@
+-- H2 Idempotency Key Schema for PT-Log
+-- Responses of write requests sent with an Idempotency-Key header, kept for the configured TTL
+
+CREATE TABLE PTLOG_IDEMPOTENCY (
+    NYCKEL VARCHAR(255) PRIMARY KEY,
+    FINGERPRINT VARCHAR(64) NOT NULL,
+    SVAR VARCHAR(4000),
+    SKAPAD TIMESTAMP NOT NULL
+);
+
+-- Expired keys are purged by creation time
+CREATE INDEX IDX_IDEMPOTENCY_SKAPAD ON PTLOG_IDEMPOTENCY(SKAPAD);
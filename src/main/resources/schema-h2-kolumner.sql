@@ -0,0 +1,10 @@
+-- H2 Column Upgrade for PT-Log
+-- Columns added after the initial schema. The application adds them on start when they are missing; run this
+-- manually instead when its database user may not alter tables.
+
+-- Deflate-compressed ANALYS (analys.compression.enabled)
+ALTER TABLE PTLOG ADD COLUMN IF NOT EXISTS ANALYS_KOMPRIMERAD BLOB;
+ALTER TABLE PTLOG_ARKIV ADD COLUMN IF NOT EXISTS ANALYS_KOMPRIMERAD BLOB;
+
+-- Tombstone of a deleted project while its rows are purged
+ALTER TABLE PTLOG_PROJEKT ADD COLUMN IF NOT EXISTS RADERAD INTEGER DEFAULT 0 NOT NULL CHECK (RADERAD IN (0, 1));
@@ -0,0 +1,20 @@
+-- H2 Project Deletion Schema for PT-Log
+-- Deleting a project sets PTLOG_PROJEKT.RADERAD and adds a row here that tracks the purge; its tests, history
+-- and results are then purged in chunks in the background. The PTLOG_PROJEKT row is deleted last, since deleting
+-- it earlier would cascade (ON DELETE CASCADE) to all remaining tests in one transaction.
+-- TOTALT is null until the first background run has counted the rows to purge.
+
+CREATE TABLE PTLOG_RADERING (
+    ID BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    PROJEKT VARCHAR(255) NOT NULL,
+    STATUS VARCHAR(10) NOT NULL,
+    BEGARD TIMESTAMP NOT NULL,
+    AVSLUTAD TIMESTAMP,
+    TOTALT BIGINT,
+    RADERADE BIGINT NOT NULL,
+    STEG VARCHAR(30)
+);
+
+-- Pending purges are polled by status, progress is looked up by project
+CREATE INDEX IDX_RADERING_STATUS ON PTLOG_RADERING(STATUS);
+CREATE INDEX IDX_RADERING_PROJEKT ON PTLOG_RADERING(PROJEKT);
@@ -0,0 +1,36 @@
+-- H2 Load Test Result Schema for PT-Log
+-- Uploaded JMeter JTL / Gatling simulation.log files are summarized once: response time histograms and
+-- throughput series per transaction are kept, the raw file is not
+
+-- PTLOG_ID refers to PTLOG or PTLOG_ARKIV (IDs are preserved when rows move), so there is no foreign key
+CREATE TABLE PTLOG_RESULTAT (
+    ID BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    PTLOG_ID BIGINT NOT NULL,
+    PROJEKT VARCHAR(255) NOT NULL,
+    FORMAT VARCHAR(20) NOT NULL,
+    FILNAMN VARCHAR(255),
+    DATUM TIMESTAMP NOT NULL,
+    STARTTID TIMESTAMP,
+    SLUTTID TIMESTAMP,
+    ANTAL BIGINT NOT NULL,
+    FEL BIGINT NOT NULL,
+    OGILTIGA BIGINT NOT NULL,
+    HISTOGRAM BLOB NOT NULL,
+    TIDSSERIE BLOB NOT NULL
+);
+
+CREATE INDEX IDX_RESULTAT_PTLOG_ID ON PTLOG_RESULTAT(PTLOG_ID);
+CREATE INDEX IDX_RESULTAT_PROJEKT ON PTLOG_RESULTAT(PROJEKT);
+
+-- One row per transaction (JMeter label / Gatling request name) of an upload
+CREATE TABLE PTLOG_RESULTAT_TRANSAKTION (
+    RESULTAT_ID BIGINT NOT NULL,
+    TRANSAKTION VARCHAR(1000) NOT NULL,
+    ANTAL BIGINT NOT NULL,
+    FEL BIGINT NOT NULL,
+    HISTOGRAM BLOB NOT NULL,
+    TIDSSERIE BLOB NOT NULL,
+    CONSTRAINT FK_RESULTAT_TRANSAKTION FOREIGN KEY (RESULTAT_ID) REFERENCES PTLOG_RESULTAT(ID) ON DELETE CASCADE
+);
+
+CREATE INDEX IDX_RESULTAT_TRANSAKTION ON PTLOG_RESULTAT_TRANSAKTION(RESULTAT_ID);
@@ -0,0 +1,7 @@
+-- H2 Change Version Schema for PT-Log
+-- One row per project, bumped on every write so other instances can invalidate cached reads
+
+CREATE TABLE PTLOG_VERSION (
+    PROJEKT VARCHAR(255) PRIMARY KEY,
+    VERSION BIGINT DEFAULT 0 NOT NULL
+);
@@ -9,7 +9,9 @@
 CREATE TABLE PTLOG_PROJEKT (
     NAMN VARCHAR(255) PRIMARY KEY,
     BESKRIVNING VARCHAR(4000),
-    ARKIVERAD INTEGER DEFAULT 0 NOT NULL CHECK (ARKIVERAD IN (0, 1))
+    ARKIVERAD INTEGER DEFAULT 0 NOT NULL CHECK (ARKIVERAD IN (0, 1)),
+    -- Set while a deleted project's rows are purged (see ProjectPurge), the row itself is removed last
+    RADERAD INTEGER DEFAULT 0 NOT NULL CHECK (RADERAD IN (0, 1))
 );
 
 -- Create PTLOG table with IDENTITY (H2 2.x syntax)
@@ -20,6 +22,8 @@ CREATE TABLE PTLOG (
     TESTNAMN VARCHAR(255) NOT NULL,
     SYFTE VARCHAR(1000),
     ANALYS CLOB,
+    -- Long analyses, compressed (see AnalysCompression); ANALYS is NULL when set
+    ANALYS_KOMPRIMERAD BLOB,
     PROJEKT VARCHAR(255) NOT NULL,
     TESTARE VARCHAR(255),
     MARKERA INTEGER DEFAULT 0 NOT NULL CHECK (MARKERA IN (0, 1))
@@ -0,0 +1,29 @@
+-- Oracle Archive Schema for PT-Log
+-- Tests belonging to archived projects are moved here so PTLOG and its indexes only hold active data
+
+-- Create PTLOG_ARKIV table (same columns as PTLOG, IDs are preserved when moving rows)
+-- COMPRESS BASIC compresses blocks loaded with direct-path (INSERT /*+ APPEND */) inserts.
+-- No foreign key here: Oracle silently falls back to conventional inserts for tables with
+-- enabled referential constraints, so deleteProject removes archived rows explicitly.
+-- With Advanced Compression licensed, ANALYS can also use: LOB (ANALYS) STORE AS SECUREFILE (COMPRESS MEDIUM)
+-- (without it, analys.compression.enabled compresses long analyses in the application)
+CREATE TABLE PTLOG_ARKIV (
+    ID NUMBER PRIMARY KEY,
+    DATUM TIMESTAMP NOT NULL,
+    TYP VARCHAR2(50) NOT NULL,
+    TESTNAMN VARCHAR2(255) NOT NULL,
+    SYFTE VARCHAR2(1000),
+    ANALYS CLOB,
+    ANALYS_KOMPRIMERAD BLOB,
+    PROJEKT VARCHAR2(255) NOT NULL,
+    TESTARE VARCHAR2(255),
+    MARKERA NUMBER(1) DEFAULT 0 NOT NULL CHECK (MARKERA IN (0, 1))
+) COMPRESS BASIC
+  LOB (ANALYS) STORE AS SECUREFILE
+  LOB (ANALYS_KOMPRIMERAD) STORE AS SECUREFILE;
+
+-- Archived data is only read per project
+CREATE INDEX IDX_PTLOG_ARKIV_PROJEKT ON PTLOG_ARKIV(PROJEKT) COMPRESS;
+
+-- Commit changes
+COMMIT;
@@ -0,0 +1,31 @@
+-- Oracle Edit History Schema for PT-Log
+-- Every edit of ANALYS or SYFTE is kept as a compressed delta against the previous version,
+-- with a full snapshot every few versions so rebuilding an old version stays cheap
+
+-- Create sequence for PTLOG_HISTORIK primary key
+CREATE SEQUENCE PTLOG_HISTORIK_SEQ
+    START WITH 1
+    INCREMENT BY 1
+    NOCYCLE;
+
+-- PTLOG_ID refers to PTLOG or PTLOG_ARKIV (IDs are preserved when rows move), so there is no foreign key.
+-- DATA is already deflated by the application; deltas are small enough to be stored in the row.
+CREATE TABLE PTLOG_HISTORIK (
+    ID NUMBER DEFAULT PTLOG_HISTORIK_SEQ.NEXTVAL PRIMARY KEY,
+    PTLOG_ID NUMBER NOT NULL,
+    PROJEKT VARCHAR2(255) NOT NULL,
+    FALT VARCHAR2(20) NOT NULL,
+    VERSION NUMBER NOT NULL,
+    DATUM TIMESTAMP NOT NULL,
+    SNAPSHOT NUMBER(1) DEFAULT 0 NOT NULL CHECK (SNAPSHOT IN (0, 1)),
+    LANGD NUMBER NOT NULL,
+    CHECKSUM NUMBER NOT NULL,
+    STORLEK NUMBER NOT NULL,
+    DATA BLOB NOT NULL
+) LOB (DATA) STORE AS SECUREFILE (ENABLE STORAGE IN ROW);
+
+CREATE UNIQUE INDEX IDX_HISTORIK_VERSION ON PTLOG_HISTORIK(PTLOG_ID, FALT, VERSION);
+CREATE INDEX IDX_HISTORIK_PROJEKT ON PTLOG_HISTORIK(PROJEKT);
+
+-- Commit changes
+COMMIT;
@@ -0,0 +1,15 @@
+-- Oracle Idempotency Key Schema for PT-Log
+-- Responses of write requests sent with an Idempotency-Key header, kept for the configured TTL
+
+CREATE TABLE PTLOG_IDEMPOTENCY (
+    NYCKEL VARCHAR2(255) PRIMARY KEY,
+    FINGERPRINT VARCHAR2(64) NOT NULL,
+    SVAR VARCHAR2(4000),
+    SKAPAD TIMESTAMP NOT NULL
+);
+
+-- Expired keys are purged by creation time
+CREATE INDEX IDX_IDEMPOTENCY_SKAPAD ON PTLOG_IDEMPOTENCY(SKAPAD);
+
+-- Commit changes
+COMMIT;
@@ -0,0 +1,10 @@
+-- Oracle Column Upgrade for PT-Log
+-- Columns added after the initial schema. The application adds them on start when they are missing; run this
+-- manually instead when its database user may not alter tables.
+
+-- Deflate-compressed ANALYS (analys.compression.enabled)
+ALTER TABLE PTLOG ADD (ANALYS_KOMPRIMERAD BLOB) LOB (ANALYS_KOMPRIMERAD) STORE AS SECUREFILE;
+ALTER TABLE PTLOG_ARKIV ADD (ANALYS_KOMPRIMERAD BLOB) LOB (ANALYS_KOMPRIMERAD) STORE AS SECUREFILE;
+
+-- Tombstone of a deleted project while its rows are purged
+ALTER TABLE PTLOG_PROJEKT ADD (RADERAD NUMBER(1) DEFAULT 0 NOT NULL CHECK (RADERAD IN (0, 1)));
@@ -0,0 +1,29 @@
+-- Oracle Project Deletion Schema for PT-Log
+-- Deleting a project sets PTLOG_PROJEKT.RADERAD and adds a row here that tracks the purge; its tests, history
+-- and results are then purged in chunks in the background. The PTLOG_PROJEKT row is deleted last, since deleting
+-- it earlier would cascade (ON DELETE CASCADE) to all remaining tests in one transaction.
+-- TOTALT is null until the first background run has counted the rows to purge.
+
+-- Create sequence for PTLOG_RADERING primary key
+CREATE SEQUENCE PTLOG_RADERING_SEQ
+    START WITH 1
+    INCREMENT BY 1
+    NOCYCLE;
+
+CREATE TABLE PTLOG_RADERING (
+    ID NUMBER DEFAULT PTLOG_RADERING_SEQ.NEXTVAL PRIMARY KEY,
+    PROJEKT VARCHAR2(255) NOT NULL,
+    STATUS VARCHAR2(10) NOT NULL,
+    BEGARD TIMESTAMP NOT NULL,
+    AVSLUTAD TIMESTAMP,
+    TOTALT NUMBER,
+    RADERADE NUMBER NOT NULL,
+    STEG VARCHAR2(30)
+);
+
+-- Pending purges are polled by status, progress is looked up by project
+CREATE INDEX IDX_RADERING_STATUS ON PTLOG_RADERING(STATUS);
+CREATE INDEX IDX_RADERING_PROJEKT ON PTLOG_RADERING(PROJEKT);
+
+-- Commit changes
+COMMIT;
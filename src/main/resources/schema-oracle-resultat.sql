@@ -0,0 +1,48 @@
+-- Oracle Load Test Result Schema for PT-Log
+-- Uploaded JMeter JTL / Gatling simulation.log files are summarized once: response time histograms and
+-- throughput series per transaction are kept, the raw file is not
+
+-- Create sequence for PTLOG_RESULTAT primary key
+CREATE SEQUENCE PTLOG_RESULTAT_SEQ
+    START WITH 1
+    INCREMENT BY 1
+    NOCYCLE;
+
+-- PTLOG_ID refers to PTLOG or PTLOG_ARKIV (IDs are preserved when rows move), so there is no foreign key.
+-- HISTOGRAM and TIDSSERIE are deflated by the application and usually a few KB, small enough for the row.
+CREATE TABLE PTLOG_RESULTAT (
+    ID NUMBER DEFAULT PTLOG_RESULTAT_SEQ.NEXTVAL PRIMARY KEY,
+    PTLOG_ID NUMBER NOT NULL,
+    PROJEKT VARCHAR2(255) NOT NULL,
+    FORMAT VARCHAR2(20) NOT NULL,
+    FILNAMN VARCHAR2(255 CHAR),
+    DATUM TIMESTAMP NOT NULL,
+    STARTTID TIMESTAMP,
+    SLUTTID TIMESTAMP,
+    ANTAL NUMBER NOT NULL,
+    FEL NUMBER NOT NULL,
+    OGILTIGA NUMBER NOT NULL,
+    HISTOGRAM BLOB NOT NULL,
+    TIDSSERIE BLOB NOT NULL
+) LOB (HISTOGRAM) STORE AS SECUREFILE (ENABLE STORAGE IN ROW)
+  LOB (TIDSSERIE) STORE AS SECUREFILE (ENABLE STORAGE IN ROW);
+
+CREATE INDEX IDX_RESULTAT_PTLOG_ID ON PTLOG_RESULTAT(PTLOG_ID);
+CREATE INDEX IDX_RESULTAT_PROJEKT ON PTLOG_RESULTAT(PROJEKT);
+
+-- One row per transaction (JMeter label / Gatling request name) of an upload
+CREATE TABLE PTLOG_RESULTAT_TRANSAKTION (
+    RESULTAT_ID NUMBER NOT NULL,
+    TRANSAKTION VARCHAR2(1000 CHAR) NOT NULL,
+    ANTAL NUMBER NOT NULL,
+    FEL NUMBER NOT NULL,
+    HISTOGRAM BLOB NOT NULL,
+    TIDSSERIE BLOB NOT NULL,
+    CONSTRAINT FK_RESULTAT_TRANSAKTION FOREIGN KEY (RESULTAT_ID) REFERENCES PTLOG_RESULTAT(ID) ON DELETE CASCADE
+) LOB (HISTOGRAM) STORE AS SECUREFILE (ENABLE STORAGE IN ROW)
+  LOB (TIDSSERIE) STORE AS SECUREFILE (ENABLE STORAGE IN ROW);
+
+CREATE INDEX IDX_RESULTAT_TRANSAKTION ON PTLOG_RESULTAT_TRANSAKTION(RESULTAT_ID);
+
+-- Commit changes
+COMMIT;
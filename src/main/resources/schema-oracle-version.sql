@@ -0,0 +1,10 @@
+-- Oracle Change Version Schema for PT-Log
+-- One row per project, bumped on every write so other instances can invalidate cached reads
+
+CREATE TABLE PTLOG_VERSION (
+    PROJEKT VARCHAR2(255) PRIMARY KEY,
+    VERSION NUMBER DEFAULT 0 NOT NULL
+);
+
+-- Commit changes
+COMMIT;
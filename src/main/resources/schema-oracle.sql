@@ -5,7 +5,9 @@
 CREATE TABLE PTLOG_PROJEKT (
     NAMN VARCHAR2(255) PRIMARY KEY,
     BESKRIVNING VARCHAR2(4000),
-    ARKIVERAD NUMBER(1) DEFAULT 0 NOT NULL CHECK (ARKIVERAD IN (0, 1))
+    ARKIVERAD NUMBER(1) DEFAULT 0 NOT NULL CHECK (ARKIVERAD IN (0, 1)),
+    -- Set while a deleted project's rows are purged (see ProjectPurge), the row itself is removed last
+    RADERAD NUMBER(1) DEFAULT 0 NOT NULL CHECK (RADERAD IN (0, 1))
 );
 
 -- Create sequence for PTLOG primary key
@@ -23,6 +25,8 @@ CREATE TABLE PTLOG (
     TESTNAMN VARCHAR2(255) NOT NULL,
     SYFTE VARCHAR2(1000),
     ANALYS CLOB,
+    -- Long analyses, compressed (see AnalysCompression); ANALYS is NULL when set
+    ANALYS_KOMPRIMERAD BLOB,
     PROJEKT VARCHAR2(255) NOT NULL,
     TESTARE VARCHAR2(255),
     MARKERA NUMBER(1) DEFAULT 0 NOT NULL CHECK (MARKERA IN (0, 1)),
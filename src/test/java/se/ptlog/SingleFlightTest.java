@@ -0,0 +1,149 @@
+package se.ptlog;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, Object> flights = new SingleFlight<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        Object value = new Object();
+        List<Thread> waiters = new ArrayList<>();
+        List<Future<Object>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newCachedThreadPool()) {
+            results.add(executor.submit(() -> flights.execute("p", () -> blockingLoad(value))));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    synchronized (waiters) {
+                        waiters.add(Thread.currentThread());
+                    }
+                    return flights.execute("p", () -> {
+                        loads.incrementAndGet();
+                        return new Object();
+                    });
+                }));
+            }
+            awaitParked(waiters, 8);
+            release.countDown();
+            for (Future<Object> result : results) {
+                assertSame(value, result.get(5, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void waitersGetTheSameException() throws Exception {
+        SQLException failure = new SQLException("ORA-01013: user requested cancel of current operation");
+        List<Thread> waiters = new ArrayList<>();
+        try (ExecutorService executor = Executors.newCachedThreadPool()) {
+            Future<Object> first = executor.submit(() -> flights.execute("p", () -> {
+                blockingLoad(null);
+                throw failure;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Object> second = executor.submit(() -> {
+                synchronized (waiters) {
+                    waiters.add(Thread.currentThread());
+                }
+                return flights.execute("p", Object::new);
+            });
+            awaitParked(waiters, 1);
+            release.countDown();
+            for (Future<Object> result : List.of(first, second)) {
+                Exception thrown = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertSame(failure, thrown.getCause());
+            }
+        }
+    }
+
+    @Test
+    void runtimeExceptionsReachTheCaller() {
+        IllegalStateException failure = new IllegalStateException("pool closed");
+        assertSame(failure, assertThrows(IllegalStateException.class,
+                () -> flights.execute("p", () -> {
+                    throw failure;
+                })));
+    }
+
+    @Test
+    void finishedLoadsAreNotCached() throws SQLException {
+        assertEquals(1, flights.execute("p", loads::incrementAndGet));
+        assertEquals(2, flights.execute("p", loads::incrementAndGet));
+        // A failed load is not remembered either
+        assertThrows(SQLException.class, () -> flights.execute("p", () -> {
+            throw new SQLException("failed");
+        }));
+        assertEquals(3, flights.execute("p", loads::incrementAndGet));
+    }
+
+    @Test
+    void differentKeysLoadSeparately() throws Exception {
+        try (ExecutorService executor = Executors.newCachedThreadPool()) {
+            Future<Object> blocked = executor.submit(() -> flights.execute("a", () -> blockingLoad("a")));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // Runs while "a" is still in flight
+            assertEquals("b", flights.execute("b", () -> "b"));
+            release.countDown();
+            assertEquals("a", blocked.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void forgetStartsAFreshLoad() throws Exception {
+        try (ExecutorService executor = Executors.newCachedThreadPool()) {
+            Future<Object> stale = executor.submit(() -> flights.execute("p", () -> blockingLoad("before write")));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            flights.forget("p");
+            assertEquals("after write", flights.execute("p", () -> "after write"));
+            release.countDown();
+            assertEquals("before write", stale.get(5, TimeUnit.SECONDS));
+        }
+        // The stale flight finishing must not remove a newer one, nor leave itself behind
+        assertEquals("next", flights.execute("p", () -> "next"));
+    }
+
+    private Object blockingLoad(Object value) throws SQLException {
+        loads.incrementAndGet();
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+        return value;
+    }
+
+    // Waits until every waiter is blocked on the shared flight, so none of them can start a load of its own
+    private static void awaitParked(List<Thread> waiters, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            synchronized (waiters) {
+                if (waiters.size() == count
+                        && waiters.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+                    return;
+                }
+            }
+            Thread.sleep(5);
+        }
+        fail("waiters did not join the flight in time");
+    }
+}
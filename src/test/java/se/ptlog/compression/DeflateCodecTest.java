@@ -0,0 +1,55 @@
+package se.ptlog.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeflateCodecTest {
+
+    @Test
+    void storesShortPayloadsRaw() {
+        byte[] payload = "abc".getBytes(StandardCharsets.UTF_8);
+        byte[] stored = DeflateCodec.encode(payload);
+        assertEquals(DeflateCodec.RAW, stored[0]);
+        assertEquals(payload.length + 1, stored.length);
+        assertArrayEquals(payload, DeflateCodec.decode(stored));
+
+        byte[] empty = DeflateCodec.encode(new byte[0]);
+        assertArrayEquals(new byte[0], DeflateCodec.decode(empty));
+    }
+
+    @Test
+    void deflatesCompressiblePayloads() {
+        byte[] payload = "Response times stayed flat.\n".repeat(1_000).getBytes(StandardCharsets.UTF_8);
+        byte[] stored = DeflateCodec.encode(payload);
+        assertEquals(DeflateCodec.DEFLATE, stored[0]);
+        assertTrue(stored.length < payload.length / 10, "stored " + stored.length + " bytes");
+        assertArrayEquals(payload, DeflateCodec.decode(stored));
+    }
+
+    @Test
+    void keepsIncompressiblePayloadsRaw() {
+        byte[] payload = new byte[4096];
+        new Random(42).nextBytes(payload);
+        byte[] stored = DeflateCodec.encode(payload);
+        assertEquals(DeflateCodec.RAW, stored[0]);
+        assertArrayEquals(payload, DeflateCodec.decode(stored));
+    }
+
+    @Test
+    void rejectsUnknownOrDamagedEntries() {
+        assertThrows(IllegalArgumentException.class, () -> DeflateCodec.decode(new byte[]{7, 1, 2}));
+
+        byte[] stored = DeflateCodec.encode("analysis ".repeat(500).getBytes(StandardCharsets.UTF_8));
+        byte[] truncated = Arrays.copyOf(stored, stored.length / 2);
+        assertThrows(IllegalArgumentException.class, () -> DeflateCodec.decode(truncated));
+
+        byte[] corrupt = stored.clone();
+        corrupt[1] = (byte) 0xFF;
+        assertThrows(IllegalArgumentException.class, () -> DeflateCodec.decode(corrupt));
+    }
+}
@@ -0,0 +1,72 @@
+package se.ptlog.history;
+
+import org.junit.jupiter.api.Test;
+import se.ptlog.compression.DeflateCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextDeltaTest {
+
+    @Test
+    void deltaRoundTrips() {
+        List<String[]> edits = List.of(
+                new String[]{"", ""},
+                new String[]{"", "first text"},
+                new String[]{"some text", ""},
+                new String[]{"unchanged", "unchanged"},
+                new String[]{"p95 was 120 ms", "p95 was 135 ms"},
+                new String[]{"abc", "abXbc"},
+                new String[]{"aaaa", "aa"},
+                new String[]{"aa", "aaaa"},
+                new String[]{"start", "new start"},
+                new String[]{"end", "end, appended"},
+                new String[]{"åäö é", "åäö ö é"},
+                // Edits next to and inside surrogate pairs must not split a pair
+                new String[]{"x😀y", "x😁y"},
+                new String[]{"😀", "😀😀"},
+                new String[]{"a😀", "a🐀"});
+        for (String[] edit : edits) {
+            byte[] delta = TextDelta.delta(edit[0], edit[1]);
+            assertEquals(edit[1], TextDelta.apply(edit[0], delta), edit[0] + " -> " + edit[1]);
+            assertEquals(edit[1], TextDelta.apply(edit[0], DeflateCodec.decode(DeflateCodec.encode(delta))));
+        }
+    }
+
+    @Test
+    void deltaHoldsOnlyTheChangedSpan() {
+        String before = "x".repeat(10_000) + " p95 120 ms " + "y".repeat(10_000);
+        String after = "x".repeat(10_000) + " p95 135 ms " + "y".repeat(10_000);
+        byte[] delta = TextDelta.delta(before, after);
+        // Two varints of at most 3 bytes and "35"
+        assertTrue(delta.length <= 8, "delta is " + delta.length + " bytes");
+        assertEquals(after, TextDelta.apply(before, delta));
+    }
+
+    @Test
+    void historyChainMatchesChecksums() {
+        // Rebuilds every version the way EditHistory does: a snapshot, then stored deltas applied in order
+        List<String> versions = List.of(
+                "Initial analysis.",
+                "Initial analysis. p95 was 120 ms.",
+                "Reviewed analysis. p95 was 120 ms.",
+                "Reviewed analysis. p95 was 135 ms after the fix 😀",
+                "");
+        byte[] snapshot = DeflateCodec.encode(versions.get(0).getBytes(StandardCharsets.UTF_8));
+        String text = new String(DeflateCodec.decode(snapshot), StandardCharsets.UTF_8);
+        assertEquals(EditHistory.checksum(versions.get(0)), EditHistory.checksum(text));
+        for (int i = 1; i < versions.size(); i++) {
+            byte[] stored = DeflateCodec.encode(TextDelta.delta(versions.get(i - 1), versions.get(i)));
+            text = TextDelta.apply(text, DeflateCodec.decode(stored));
+            assertEquals(versions.get(i), text);
+            assertEquals(EditHistory.checksum(versions.get(i)), EditHistory.checksum(text), "version " + (i + 1));
+        }
+
+        // A delta applied to the wrong base no longer matches the stored checksum
+        byte[] delta = TextDelta.delta(versions.get(1), versions.get(2));
+        assertNotEquals(EditHistory.checksum(versions.get(2)),
+                EditHistory.checksum(TextDelta.apply(versions.get(1).replace("120", "125"), delta)));
+    }
+}
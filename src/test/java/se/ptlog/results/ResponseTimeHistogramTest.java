@@ -0,0 +1,126 @@
+package se.ptlog.results;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseTimeHistogramTest {
+
+    @Test
+    void countsValuesBelow256Exactly() {
+        for (long value = 0; value < 256; value++) {
+            int index = ResponseTimeHistogram.index(value);
+            assertEquals(value, index);
+            assertEquals(value, ResponseTimeHistogram.highestValue(index));
+        }
+    }
+
+    @Test
+    void firstLogLinearBucketsAreTwoWide() {
+        assertEquals(256, ResponseTimeHistogram.index(256));
+        assertEquals(256, ResponseTimeHistogram.index(257));
+        assertEquals(257, ResponseTimeHistogram.index(258));
+        assertEquals(257, ResponseTimeHistogram.highestValue(256));
+        assertEquals(511, ResponseTimeHistogram.highestValue(ResponseTimeHistogram.index(511)));
+        assertEquals(ResponseTimeHistogram.index(511) + 1, ResponseTimeHistogram.index(512));
+    }
+
+    @Test
+    void everyValueFallsInsideItsBucket() {
+        long previousIndex = -1;
+        for (long value = 0; value < 1 << 20; value++) {
+            assertInsideBucket(value);
+            int index = ResponseTimeHistogram.index(value);
+            assertTrue(index == previousIndex || index == previousIndex + 1, "indexes must be contiguous at " + value);
+            previousIndex = index;
+        }
+        for (int bit = 20; bit < 63; bit++) {
+            long power = 1L << bit;
+            assertInsideBucket(power - 1);
+            assertInsideBucket(power);
+            assertInsideBucket(power + 1);
+        }
+        assertInsideBucket(Long.MAX_VALUE);
+    }
+
+    @Test
+    void percentilesAreWithinBucketPrecision() {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100_000, histogram.count());
+        assertEquals(1, histogram.min());
+        assertEquals(100_000, histogram.max());
+        assertEquals(50_000.5, histogram.mean(), 1e-9);
+        for (double percentile : new double[]{50, 90, 95, 99, 99.9}) {
+            long expected = (long) (percentile * 1000);
+            long actual = histogram.percentile(percentile);
+            assertTrue(actual >= expected && actual - expected <= expected / 128,
+                    "p" + percentile + " was " + actual + ", expected " + expected);
+        }
+        assertEquals(1, histogram.percentile(0));
+        assertEquals(100_000, histogram.percentile(100));
+    }
+
+    @Test
+    void percentileIsClampedToRecordedRange() {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        histogram.record(1000);
+        // The bucket of 1000 reaches 1003, the answer must not exceed what was recorded
+        assertEquals(1000, histogram.percentile(50));
+        assertEquals(1000, histogram.percentile(100));
+    }
+
+    @Test
+    void recordsNegativeValuesAsZero() {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.min());
+        assertEquals(0, histogram.max());
+    }
+
+    @Test
+    void emptyHistogramReportsZeros() {
+        ResponseTimeHistogram histogram = ResponseTimeHistogram.decode(new ResponseTimeHistogram().encode());
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.min());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.mean());
+        assertEquals(0, histogram.percentile(99));
+    }
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        long[] values = {0, 3, 255, 256, 257, 1_000, 1_000, 65_535, 3_600_000, 1L << 40};
+        for (long value : values) {
+            histogram.record(value);
+        }
+        ResponseTimeHistogram decoded = ResponseTimeHistogram.decode(histogram.encode());
+        assertEquals(histogram.count(), decoded.count());
+        assertEquals(histogram.min(), decoded.min());
+        assertEquals(histogram.max(), decoded.max());
+        assertEquals(histogram.mean(), decoded.mean());
+        for (double percentile = 0; percentile <= 100; percentile += 2.5) {
+            assertEquals(histogram.percentile(percentile), decoded.percentile(percentile), "p" + percentile);
+        }
+
+        // A decoded histogram keeps recording
+        decoded.record(1L << 50);
+        assertEquals(histogram.count() + 1, decoded.count());
+        assertEquals(1L << 50, decoded.max());
+    }
+
+    private static void assertInsideBucket(long value) {
+        int index = ResponseTimeHistogram.index(value);
+        long top = ResponseTimeHistogram.highestValue(index);
+        assertTrue(top >= value, value + " is above the top of its bucket " + top);
+        if (index > 0) {
+            assertTrue(ResponseTimeHistogram.highestValue(index - 1) < value,
+                    value + " also fits the bucket below");
+        }
+        // 128 sub-buckets per power of two: a bucket is less than 1/128 of its values wide
+        assertTrue(top - value <= Math.max(0, value / 128), "bucket of " + value + " is too wide");
+    }
+}
@@ -0,0 +1,202 @@
+package se.ptlog.results;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultParserTest {
+
+    private static final String JTL_HEADER =
+            "timeStamp,elapsed,label,responseCode,responseMessage,threadName,dataType,success\n";
+
+    @Test
+    void parsesJtlWithHeader() throws IOException {
+        ResultParser.Result result = parse(JTL_HEADER +
+                "1000,100,Login,200,OK,t1,text,true\n" +
+                "1050,300,Search,200,OK,t1,text,true\n" +
+                "1100,200,Login,500,Error,t2,text,false\n");
+
+        assertEquals(ResultParser.Format.JTL, result.format());
+        assertEquals(3, result.samples());
+        assertEquals(0, result.invalidLines());
+        assertEquals(1000, result.firstStartMs());
+        assertEquals(1350, result.lastEndMs());
+        assertEquals(1, result.total().errors());
+        assertEquals(List.of("Login", "Search"), names(result));
+
+        ResultParser.Transaction login = transaction(result, "Login");
+        assertEquals(2, login.histogram().count());
+        assertEquals(100, login.histogram().min());
+        assertEquals(200, login.histogram().max());
+        assertEquals(1, login.errors());
+    }
+
+    @Test
+    void usesDefaultColumnsWithoutHeader() throws IOException {
+        ResultParser.Result result = parse("1000,100,Login,200,OK,t1,text,true\r\n2000,50,Login,200,OK,t1,text,true");
+
+        assertEquals(2, result.samples());
+        assertEquals(2050, result.lastEndMs());
+        assertEquals(List.of("Login"), names(result));
+    }
+
+    @Test
+    void detectsDelimiterAndColumnOrderFromHeader() throws IOException {
+        ResultParser.Result semicolons = parse("label;success;elapsed;timeStamp\nLogin;true;100;1000\n");
+        assertEquals(1, semicolons.samples());
+        assertEquals(100, transaction(semicolons, "Login").histogram().max());
+
+        ResultParser.Result tabs = parse("timeStamp\telapsed\tlabel\n1000\t100\tLogin, step 1\n");
+        assertEquals(List.of("Login, step 1"), names(tabs));
+    }
+
+    @Test
+    void unescapesQuotedLabels() throws IOException {
+        ResultParser.Result result = parse(JTL_HEADER +
+                "1000,100,\"Say \"\"hi\"\"\",200,OK,t1,text,true\n" +
+                "1100,100,\"Say \"\"hi\"\"\",200,OK,t1,text,true\n" +
+                "1200,100,\"a,b\",200,OK,t1,text,true\n" +
+                "1300,100,\"\"\"\",200,OK,t1,text,true\n" +
+                "1400,100,Login,200,\"line one\nline two\",t1,text,true\n");
+
+        assertEquals(5, result.samples());
+        assertEquals(0, result.invalidLines());
+        assertEquals(List.of("Say \"hi\"", "a,b", "\"", "Login"), names(result));
+        assertEquals(2, transaction(result, "Say \"hi\"").histogram().count());
+    }
+
+    @Test
+    void countsMalformedLinesAsInvalid() throws IOException {
+        ResultParser.Result result = parse(JTL_HEADER +
+                "1000,100,Login,200,OK,t1,text,true\n" +
+                "abc,100,Login,200,OK,t1,text,true\n" +
+                "1000,-1,Login,200,OK,t1,text,true\n" +
+                "1000,100\n" +
+                "\n");
+
+        assertEquals(1, result.samples());
+        assertEquals(3, result.invalidLines());
+    }
+
+    @Test
+    void skipsLinesLongerThanOneMebibyte() throws IOException {
+        char[] body = new char[(1 << 20) + 10];
+        Arrays.fill(body, 'x');
+        ResultParser.Result result = parse(JTL_HEADER +
+                "1000,100,Login,200,OK,t1,text,true\n" +
+                "1100,100,Login,200," + new String(body) + ",t1,text,true\n" +
+                "1200,100,Search,200,OK,t1,text,true\n");
+
+        assertEquals(2, result.samples());
+        assertEquals(1, result.invalidLines());
+        assertEquals(List.of("Login", "Search"), names(result));
+    }
+
+    @Test
+    void keepsLinesJustBelowOneMebibyte() throws IOException {
+        String prefix = "1100,100,Login,200,";
+        String suffix = ",t1,text,true";
+        char[] body = new char[(1 << 20) - prefix.length() - suffix.length() - 1];
+        Arrays.fill(body, 'x');
+        ResultParser.Result result = parse(JTL_HEADER + prefix + new String(body) + suffix + "\n");
+
+        assertEquals(1, result.samples());
+        assertEquals(0, result.invalidLines());
+    }
+
+    @Test
+    void parsesGatlingLog() throws IOException {
+        ResultParser.Result result = parse(
+                "RUN\tsim\tsimulation\t1000\t \t3.9.5\n" +
+                "USER\tScenario\tSTART\t1000\t\n" +
+                "REQUEST\t\tHome\t1000\t1120\tOK\t \n" +
+                "REQUEST\t\tHome\t1100\t1150\tKO\tstatus.find.is(200), but actually found 500\n" +
+                "REQUEST\t7\tGroup\tCheckout\t1200\t1500\tOK\t \n" +
+                "USER\tScenario\tEND\t1600\t\n");
+
+        assertEquals(ResultParser.Format.GATLING, result.format());
+        assertEquals(3, result.samples());
+        assertEquals(1000, result.firstStartMs());
+        assertEquals(1500, result.lastEndMs());
+        assertEquals(List.of("Home", "Checkout"), names(result));
+        assertEquals(1, transaction(result, "Home").errors());
+        assertEquals(300, transaction(result, "Checkout").histogram().max());
+    }
+
+    @Test
+    void groupsTransactionsBeyondTheLimit() throws IOException {
+        StringBuilder jtl = new StringBuilder(JTL_HEADER);
+        for (int i = 0; i < 5; i++) {
+            jtl.append(1000 + i).append(",10,T").append(i).append(",200,OK,t1,text,true\n");
+        }
+        ResultParser.Result result = new ResultParser(3, 10).parse(stream(jtl.toString()), 10);
+
+        assertEquals(List.of("T0", "T1", "T2", ResultParser.OTHER), names(result));
+        assertEquals(2, transaction(result, ResultParser.OTHER).histogram().count());
+        assertEquals(5, result.total().histogram().count());
+    }
+
+    @Test
+    void findsTransactionsAfterTheTableGrows() throws IOException {
+        StringBuilder jtl = new StringBuilder(JTL_HEADER);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 200; i++) {
+                jtl.append(1000 + i).append(",10,Transaction ").append(i).append(",200,OK,t1,text,true\n");
+            }
+        }
+        ResultParser.Result result = new ResultParser(1000, 10).parse(stream(jtl.toString()), 10);
+
+        assertEquals(200, result.transactions().size());
+        for (ResultParser.Transaction transaction : result.transactions()) {
+            assertEquals(2, transaction.histogram().count(), transaction.name());
+        }
+    }
+
+    @Test
+    void rejectsFilesThatAreNotTextResults() {
+        assertThrows(IllegalArgumentException.class, () -> parse(""));
+        assertThrows(IllegalArgumentException.class, () -> parse("<?xml version=\"1.0\"?>\n<testResults>\n"));
+        assertThrows(IllegalArgumentException.class, () -> parse("label,success\nLogin,true\n"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ResultParser(10, 10).parse(new ByteArrayInputStream(new byte[]{1, 2, 3, '\n'}), 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ResultParser(10, 10).parse(new ByteArrayInputStream(new byte[]{(byte) 0x80, 1, '\n'}), 10));
+    }
+
+    @Test
+    void acceptsByteOrderMark() throws IOException {
+        byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+        byte[] jtl = (JTL_HEADER + "1000,100,Login,200,OK,t1,text,true\n").getBytes(StandardCharsets.UTF_8);
+        byte[] file = new byte[bom.length + jtl.length];
+        System.arraycopy(bom, 0, file, 0, bom.length);
+        System.arraycopy(jtl, 0, file, bom.length, jtl.length);
+
+        assertEquals(1, new ResultParser(10, 10).parse(new ByteArrayInputStream(file), 10).samples());
+    }
+
+    private static ResultParser.Result parse(String file) throws IOException {
+        return new ResultParser(100, 10).parse(stream(file), 10);
+    }
+
+    private static InputStream stream(String file) {
+        return new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> names(ResultParser.Result result) {
+        return result.transactions().stream().map(ResultParser.Transaction::name).toList();
+    }
+
+    private static ResultParser.Transaction transaction(ResultParser.Result result, String name) {
+        return result.transactions().stream()
+                .filter(transaction -> transaction.name().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("no transaction " + name));
+    }
+}
@@ -0,0 +1,63 @@
+package se.ptlog.results;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultStoreTest {
+
+    private static final String JTL = "timeStamp,elapsed,label\n1000,100,Login\n";
+
+    @Test
+    void decompressesGzipByMagicBytes() throws IOException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(JTL.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(JTL, read(ResultStore.decompressed(new ByteArrayInputStream(gzipped.toByteArray()))));
+    }
+
+    @Test
+    void passesPlainFilesThrough() throws IOException {
+        assertEquals(JTL, read(ResultStore.decompressed(stream(JTL))));
+        // Only the first magic byte matches
+        assertEquals("\u001Fabc", read(ResultStore.decompressed(stream("\u001Fabc"))));
+    }
+
+    @Test
+    void passesShortBodiesThrough() throws IOException {
+        assertEquals("", read(ResultStore.decompressed(stream(""))));
+        assertEquals("\u001F", read(ResultStore.decompressed(stream("\u001F"))));
+    }
+
+    @Test
+    void rejectsTruncatedGzip() {
+        assertThrows(IOException.class,
+                () -> read(ResultStore.decompressed(new ByteArrayInputStream(new byte[]{0x1F, (byte) 0x8B, 8}))));
+    }
+
+    @Test
+    void truncatesByCharactersWithoutSplittingSurrogatePairs() {
+        assertNull(ResultStore.truncate(null, 5));
+        assertEquals("åäö", ResultStore.truncate("åäö", 3));
+        assertEquals("åäöåä", ResultStore.truncate("åäöåäöåäö", 5));
+        // "😀" is two chars in Java, cutting between them would leave half a pair
+        assertEquals("ab", ResultStore.truncate("ab😀", 3));
+        assertEquals("ab😀", ResultStore.truncate("ab😀c", 4));
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,57 @@
+package se.ptlog.results;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VarintTest {
+
+    private static final long[] VALUES = {0, 1, 127, 128, 255, 16_383, 16_384, 2_097_151, 2_097_152,
+            Integer.MAX_VALUE, 1L << 32, 1L << 56, Long.MAX_VALUE, -1};
+
+    @Test
+    void roundTripsBoundaryValues() {
+        for (long value : VALUES) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Varint.write(out, value);
+            ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+            assertEquals(value, Varint.read(in), "value " + value);
+            assertFalse(in.hasRemaining(), "trailing bytes after " + value);
+        }
+    }
+
+    @Test
+    void usesSevenBitsPerByte() {
+        assertEquals(1, encoded(0).length);
+        assertEquals(1, encoded(127).length);
+        assertEquals(2, encoded(128).length);
+        assertEquals(2, encoded(16_383).length);
+        assertEquals(3, encoded(16_384).length);
+        assertEquals(9, encoded(Long.MAX_VALUE).length);
+        // Unsigned: a negative value takes all 64 bits
+        assertEquals(10, encoded(-1).length);
+        assertArrayEquals(new byte[]{(byte) 0x80, 0x01}, encoded(128));
+    }
+
+    @Test
+    void readsConsecutiveValues() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : VALUES) {
+            Varint.write(out, value);
+        }
+        ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+        for (long value : VALUES) {
+            assertEquals(value, Varint.read(in));
+        }
+        assertFalse(in.hasRemaining());
+    }
+
+    private static byte[] encoded(long value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Varint.write(out, value);
+        return out.toByteArray();
+    }
+}